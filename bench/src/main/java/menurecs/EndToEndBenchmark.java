@@ -0,0 +1,106 @@
+package menurecs;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.openjdk.jmh.annotations.*;
+import spark.Spark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /recommend over HTTP against the real server on synthetic data, with a local stub standing in for the R
+ * service. dtCacheEntries=0 sends every request to the stub; the default cache serves repeated contexts itself.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EndToEndBenchmark {
+    @Param({"1024", "0"})
+    String dtCacheEntries;
+
+    @Param({"10000"})
+    int numCustomers;
+
+    @Param({"170"})
+    int numItems;
+
+    File dataDir;
+    HttpServer rStub;
+    CloseableHttpClient httpClient;
+    String baseUri;
+
+    @Setup
+    public void setup() throws IOException {
+        dataDir = Files.createTempDirectory("menurecs-e2e").toFile();
+        SyntheticData.writeDataDir(dataDir, numItems, numCustomers, 100, 421);
+
+        byte[] scores = SyntheticData.dtScoresJson(numItems, 421).getBytes(StandardCharsets.UTF_8);
+        // headers and body go out as separate writes; without this Nagle adds ~40ms to every stub call
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        rStub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        rStub.createContext("/json", exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, scores.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(scores);
+            }
+        });
+        rStub.start();
+
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        System.setProperty("menurecs.dataDir", dataDir.getPath());
+        System.setProperty("menurecs.port", Integer.toString(port));
+        System.setProperty("menurecs.solver", "java");
+        System.setProperty("menurecs.watchData", "false");
+        System.setProperty("menurecs.scoring.host", "localhost");
+        System.setProperty("menurecs.scoring.port", Integer.toString(rStub.getAddress().getPort()));
+        System.setProperty("menurecs.dtCache.maxEntries", dtCacheEntries);
+        MenuEngine.main(new String[0]);
+        Spark.awaitInitialization();
+
+        httpClient = HttpClients.createDefault();
+        baseUri = "http://localhost:" + port + "/recommend?outputlength=3&numpax=2&targetspend=15"
+                + "&itemids=I0000,I0001&itemqty=1,2&hour=12&school_holiday=0&public_holiday=0&weekday=1"
+                + "&outlet=1&day=1&customerid=";
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        httpClient.close();
+        Spark.stop();
+        rStub.stop(0);
+        SyntheticData.deleteRecursively(dataDir);
+    }
+
+    @Benchmark
+    public String recommend() throws IOException {
+        // one customer in ten has no CF data
+        int customer = ThreadLocalRandom.current().nextInt(numCustomers + numCustomers / 10);
+        try (CloseableHttpResponse response = httpClient.execute(
+                new HttpGet(baseUri + SyntheticData.customerId(customer)))) {
+            String body = EntityUtils.toString(response.getEntity());
+            if (response.getStatusLine().getStatusCode() != 200) {
+                throw new IllegalStateException("Request failed: " + response.getStatusLine() + " " + body);
+            }
+            return body;
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package menurecs;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.Header;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import spark.Spark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator for GET /recommend, with a stub in place of the R service. By default it also starts the server
+ * in-process on synthetic data, so any -Dmenurecs.* setting (solver, caches, admission control) applies to the run
+ * and two runs compare like for like:
+ *
+ * java -Dmenurecs.solver=java -Dloadtest.concurrency=16 -cp target/benchmarks.jar menurecs.LoadTest
+ *
+ * Settings, defaults in brackets:
+ * loadtest.target         base URL of a server that is already running, e.g. http://localhost:8080 (start one here)
+ * loadtest.stubPort       port for the R stub (0 = any free port; 8000 with loadtest.target, -1 for no stub)
+ * loadtest.stubLatencyMs  time the stub takes per call (0), plus up to loadtest.stubJitterMs more (0)
+ * loadtest.replay         file of recorded /recommend query strings, one per line (synthetic queries)
+ * loadtest.queries        number of distinct synthetic queries, cycled through (10000)
+ * loadtest.mode           closed: each client sends its next request when the last one returns; open: requests
+ *                         start at loadtest.rate per second regardless of how fast they complete (closed)
+ * loadtest.concurrency    closed-loop clients, or most requests in flight for the open loop (8)
+ * loadtest.rate           open-loop requests per second (100)
+ * loadtest.timeoutMs      connect and read timeout per request, counted as an error (30000)
+ * loadtest.warmupSeconds  run before measuring (5), then loadtest.durationSeconds measured (30)
+ * loadtest.customers, loadtest.items  synthetic data size (10000, 170)
+ *
+ * Open-loop latency counts from when a request was due to start, so a server that falls behind shows it in the
+ * percentiles rather than in a lower request rate.
+ */
+public class LoadTest {
+    private final List<String> queries;
+    private final String baseUri;
+    private final CloseableHttpClient httpClient;
+    private final AtomicLong nextQuery = new AtomicLong();
+
+    // the open loop's per-sender latencies; requests due before the end of the warmup run but are not counted
+    private final List<LatencyLog> logs = new ArrayList<>();
+    private final List<long[]> latencies = Collections.synchronizedList(new ArrayList<>());
+    private final ConcurrentHashMap<String, AtomicLong> errors = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicLong> sources = new ConcurrentHashMap<>();
+
+    LoadTest(List<String> queries, String baseUri, int concurrency, int timeoutMs) {
+        this.queries = queries;
+        this.baseUri = baseUri;
+        PoolingHttpClientConnectionManager connections = new PoolingHttpClientConnectionManager();
+        connections.setMaxTotal(concurrency);
+        connections.setDefaultMaxPerRoute(concurrency);
+        RequestConfig timeouts = RequestConfig.custom().setConnectTimeout(timeoutMs).setSocketTimeout(timeoutMs)
+                .setConnectionRequestTimeout(timeoutMs).build();
+        httpClient = HttpClients.custom().setConnectionManager(connections).setDefaultRequestConfig(timeouts).build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String target = System.getProperty("loadtest.target");
+        int stubPort = Integer.getInteger("loadtest.stubPort", target != null ? 8000 : 0);
+        int numCustomers = Integer.getInteger("loadtest.customers", 10000);
+        int numItems = Integer.getInteger("loadtest.items", 170);
+        String mode = System.getProperty("loadtest.mode", "closed");
+        int concurrency = Integer.getInteger("loadtest.concurrency", 8);
+        int rate = Integer.getInteger("loadtest.rate", 100);
+        int warmupSeconds = Integer.getInteger("loadtest.warmupSeconds", 5);
+        int durationSeconds = Integer.getInteger("loadtest.durationSeconds", 30);
+        int timeoutMs = Integer.getInteger("loadtest.timeoutMs", 30000);
+        if (!mode.equals("closed") && !mode.equals("open")) {
+            throw new IllegalArgumentException("Unknown loadtest.mode: " + mode);
+        }
+        if (mode.equals("open") && (rate <= 0 || rate > 1000000000)) {
+            throw new IllegalArgumentException("loadtest.rate must be between 1 and 1000000000: " + rate);
+        }
+        if (concurrency <= 0 || timeoutMs <= 0) {
+            throw new IllegalArgumentException("loadtest.concurrency and loadtest.timeoutMs must be positive");
+        }
+
+        HttpServer rStub = null;
+        if (stubPort >= 0) {
+            rStub = startStub(stubPort, SyntheticData.dtScoresJson(numItems, 421),
+                    Integer.getInteger("loadtest.stubLatencyMs", 0), Integer.getInteger("loadtest.stubJitterMs", 0));
+            System.out.println("R stub on port " + rStub.getAddress().getPort());
+        }
+        File dataDir = null;
+        if (target == null) {
+            dataDir = Files.createTempDirectory("menurecs-loadtest").toFile();
+            target = startServer(dataDir, numItems, numCustomers, rStub);
+        }
+
+        String replay = System.getProperty("loadtest.replay");
+        List<String> queries = replay != null ? readQueries(new File(replay))
+                : syntheticQueries(Integer.getInteger("loadtest.queries", 10000), numItems, numCustomers, 421);
+        System.out.println("Sending " + queries.size() + (replay != null ? " replayed" : " synthetic")
+                + " queries to " + target + ", " + mode + " loop, concurrency " + concurrency
+                + (mode.equals("open") ? ", " + rate + " requests/sec" : ""));
+
+        LoadTest loadTest = new LoadTest(queries, target + "/recommend?", concurrency, timeoutMs);
+        try {
+            long elapsedNanos = mode.equals("open")
+                    ? loadTest.runOpenLoop(concurrency, rate, warmupSeconds, durationSeconds)
+                    : loadTest.runClosedLoop(concurrency, warmupSeconds, durationSeconds);
+            loadTest.report(elapsedNanos);
+        } finally {
+            loadTest.httpClient.close();
+            if (dataDir != null) {
+                Spark.stop();
+                SyntheticData.deleteRecursively(dataDir);
+            }
+            if (rStub != null) {
+                rStub.stop(0);
+            }
+        }
+        // the server's pools are not daemon threads
+        System.exit(0);
+    }
+
+    static HttpServer startStub(int port, String scoresJson, int latencyMs, int jitterMs) throws IOException {
+        byte[] scores = scoresJson.getBytes(StandardCharsets.UTF_8);
+        // headers and body go out as separate writes; without this Nagle adds ~40ms to every stub call
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer rStub = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        rStub.createContext("/json", exchange -> {
+            long delayMs = latencyMs + (jitterMs > 0 ? ThreadLocalRandom.current().nextInt(jitterMs + 1) : 0);
+            if (delayMs > 0) {
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, scores.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(scores);
+            }
+        });
+        // a thread per call, so slow calls overlap like they do against R
+        rStub.setExecutor(Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "r-stub");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        rStub.start();
+        return rStub;
+    }
+
+    // the server in this JVM; settings already given as -Dmenurecs.* are left alone
+    private static String startServer(File dataDir, int numItems, int numCustomers, HttpServer rStub)
+            throws IOException {
+        SyntheticData.writeDataDir(dataDir, numItems, numCustomers, 100, 421);
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        System.setProperty("menurecs.dataDir", dataDir.getPath());
+        System.setProperty("menurecs.port", Integer.toString(port));
+        System.setProperty("menurecs.watchData", "false");
+        if (System.getProperty("menurecs.solver") == null) {
+            System.setProperty("menurecs.solver", "java");
+        }
+        if (rStub != null) {
+            System.setProperty("menurecs.scoring.host", "localhost");
+            System.setProperty("menurecs.scoring.port", Integer.toString(rStub.getAddress().getPort()));
+        }
+        MenuEngine.main(new String[0]);
+        Spark.awaitInitialization();
+        return "http://localhost:" + port;
+    }
+
+    static List<String> readQueries(File file) throws IOException {
+        List<String> queries = new ArrayList<>();
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            // whole URLs and paths are fine too, only the query string is used
+            int question = line.indexOf('?');
+            String query = question >= 0 ? line.substring(question + 1) : line;
+            if (!query.isEmpty() && !query.startsWith("#")) {
+                queries.add(query);
+            }
+        }
+        if (queries.isEmpty()) {
+            throw new IOException("No queries in " + file);
+        }
+        return queries;
+    }
+
+    /**
+     * Queries shaped like app traffic: mostly small baskets, a few contexts, one customer in ten without CF data.
+     */
+    static List<String> syntheticQueries(int count, int numItems, int numCustomers, long seed) {
+        Random random = new Random(seed);
+        int[] hours = {11, 12, 13, 18, 19, 20};
+        int[] spends = {10, 15, 20, 30};
+        List<String> queries = new ArrayList<>(count);
+        for (int q = 0; q < count; q++) {
+            StringBuilder itemIds = new StringBuilder();
+            StringBuilder itemQty = new StringBuilder();
+            int basketSize = random.nextInt(4);
+            for (int i = 0; i < basketSize; i++) {
+                if (i > 0) {
+                    itemIds.append(',');
+                    itemQty.append(',');
+                }
+                itemIds.append(SyntheticData.itemId(random.nextInt(numItems)));
+                itemQty.append(1 + random.nextInt(2));
+            }
+            queries.add("customerid=" + SyntheticData.customerId(random.nextInt(numCustomers + numCustomers / 10))
+                    + "&outputlength=" + (3 + random.nextInt(3)) + "&numpax=" + (1 + random.nextInt(6))
+                    + "&targetspend=" + spends[random.nextInt(spends.length)]
+                    + "&itemids=" + itemIds + "&itemqty=" + itemQty
+                    + "&hour=" + hours[random.nextInt(hours.length)] + "&school_holiday=" + random.nextInt(2)
+                    + "&public_holiday=0&weekday=" + (random.nextInt(7) < 5 ? 1 : 0) + "&outlet="
+                    + (1 + random.nextInt(3)) + "&day=" + (1 + random.nextInt(7)));
+        }
+        return queries;
+    }
+
+    private long runClosedLoop(int concurrency, int warmupSeconds, int durationSeconds) throws InterruptedException {
+        long measureStart = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureStart + TimeUnit.SECONDS.toNanos(durationSeconds);
+        List<Thread> clients = new ArrayList<>();
+        for (int c = 0; c < concurrency; c++) {
+            Thread client = new Thread(() -> {
+                LatencyLog log = new LatencyLog();
+                while (true) {
+                    long start = System.nanoTime();
+                    if (start >= end) {
+                        break;
+                    }
+                    send(log, start, start >= measureStart);
+                }
+                latencies.add(log.toArray());
+            }, "loadtest-client");
+            clients.add(client);
+            client.start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        return end - measureStart;
+    }
+
+    private long runOpenLoop(int concurrency, int rate, int warmupSeconds, int durationSeconds)
+            throws InterruptedException {
+        ThreadLocal<LatencyLog> senderLogs = ThreadLocal.withInitial(() -> {
+            LatencyLog log = new LatencyLog();
+            synchronized (logs) {
+                logs.add(log);
+            }
+            return log;
+        });
+        List<Thread> senderThreads = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService senders = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "loadtest-sender");
+            thread.setDaemon(true);
+            senderThreads.add(thread);
+            return thread;
+        });
+        long intervalNanos = 1000000000L / rate;
+        long start = System.nanoTime();
+        long measureStart = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureStart + TimeUnit.SECONDS.toNanos(durationSeconds);
+        for (long due = start; due < end; due += intervalNanos) {
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            long intended = due;
+            senders.execute(() -> send(senderLogs.get(), intended, intended >= measureStart));
+        }
+        senders.shutdown();
+        if (!senders.awaitTermination(1, TimeUnit.MINUTES)) {
+            // drop what hasn't started; requests in flight end by their timeout
+            List<Runnable> dropped = senders.shutdownNow();
+            System.out.println("Senders still busy a minute after the run, dropped " + dropped.size()
+                    + " requests that had not started");
+        }
+        // the logs are not thread-safe: read them only once every sender has finished
+        synchronized (senderThreads) {
+            for (Thread thread : senderThreads) {
+                thread.join();
+            }
+        }
+        synchronized (logs) {
+            for (LatencyLog log : logs) {
+                latencies.add(log.toArray());
+            }
+        }
+        return end - measureStart;
+    }
+
+    // one request; latency counts from start, which for the open loop is when it was due
+    private void send(LatencyLog log, long start, boolean counted) {
+        String query = queries.get((int) (nextQuery.getAndIncrement() % queries.size()));
+        String error = null;
+        String source = null;
+        try (CloseableHttpResponse response = httpClient.execute(new HttpGet(baseUri + query))) {
+            EntityUtils.consume(response.getEntity());
+            int status = response.getStatusLine().getStatusCode();
+            if (status != 200) {
+                error = "HTTP " + status;
+            } else {
+                Header header = response.getFirstHeader("X-Recommendation-Source");
+                source = header != null ? header.getValue() : "unknown";
+            }
+        } catch (IOException | RuntimeException e) {
+            // e.g. IllegalArgumentException from HttpGet for a replayed query that isn't a valid URI
+            error = e.getClass().getSimpleName();
+        }
+        if (!counted) {
+            return;
+        }
+        log.add(System.nanoTime() - start);
+        if (error != null) {
+            errors.computeIfAbsent(error, key -> new AtomicLong()).incrementAndGet();
+        } else {
+            sources.computeIfAbsent(source, key -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    private void report(long elapsedNanos) {
+        int total = 0;
+        for (long[] log : latencies) {
+            total += log.length;
+        }
+        long[] all = new long[total];
+        int n = 0;
+        for (long[] log : latencies) {
+            System.arraycopy(log, 0, all, n, log.length);
+            n += log.length;
+        }
+        Arrays.sort(all);
+
+        long errorCount = 0;
+        for (AtomicLong count : errors.values()) {
+            errorCount += count.get();
+        }
+        System.out.println();
+        System.out.printf("Requests:   %d in %.1f s, %.1f/s%n", total, elapsedNanos / 1e9, total * 1e9 / elapsedNanos);
+        System.out.printf("Errors:     %d (%.2f%%) %s%n", errorCount, total > 0 ? 100.0 * errorCount / total : 0.0,
+                errors.isEmpty() ? "" : new TreeMap<>(errors));
+        System.out.println("Sources:    " + new TreeMap<>(sources));
+        if (total > 0) {
+            System.out.printf("Latency ms: p50 %.2f, p95 %.2f, p99 %.2f, max %.2f%n", percentile(all, 0.50),
+                    percentile(all, 0.95), percentile(all, 0.99), all[total - 1] / 1e6);
+        }
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    // growable per-thread latency list, so recording never contends
+    private static final class LatencyLog {
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package menurecs;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup and reload cost of the data files at several customer counts: the menu, the CF rankings parsed from
+ * recommendation.csv, and the same rankings opened from the converted recommendation.bin.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoaderBenchmark {
+    @Param({"1000", "10000", "100000"})
+    int numCustomers;
+
+    @Param({"170"})
+    int numItems;
+
+    @Param({"100"})
+    int rankingLength;
+
+    File dataDir;
+    DataFileLoader loader;
+    MenuCatalog catalog;
+
+    @Setup
+    public void setup() throws IOException {
+        dataDir = Files.createTempDirectory("menurecs-loader").toFile();
+        SyntheticData.writeDataDir(dataDir, numItems, numCustomers, rankingLength, 421);
+        RankingStoreConverter.main(new String[]{dataDir.getPath()});
+        loader = new DataFileLoader(dataDir.getPath());
+        catalog = loader.readCatalog();
+    }
+
+    @TearDown
+    public void tearDown() {
+        SyntheticData.deleteRecursively(dataDir);
+    }
+
+    @Benchmark
+    public MenuCatalog readCatalog() throws IOException {
+        return loader.readCatalog();
+    }
+
+    @Benchmark
+    public Map<String, short[]> readRecommendationCsv() throws IOException {
+        return loader.readRecommendation(catalog);
+    }
+
+    @Benchmark
+    public short[] openMappedStore() throws IOException {
+        try (MappedRankingStore store = MappedRankingStore.open(new File(dataDir, "recommendation.bin").toPath(),
+                catalog)) {
+            return store.get(SyntheticData.customerId(numCustomers / 2));
+        }
+    }
+}
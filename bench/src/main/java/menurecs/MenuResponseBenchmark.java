@@ -0,0 +1,74 @@
+package menurecs;
+
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cost of one /menu hit: building and serializing the menu per request (as the route used to) against serving the
+ * bytes precomputed by MenuResponse.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MenuResponseBenchmark {
+    @Param({"160", "1000"})
+    int numItems;
+
+    Map<String, MenuItem> menuItems;
+    MenuResponse menuResponse;
+
+    @Setup
+    public void setup() {
+        menuItems = SyntheticData.menuItems(numItems, 421);
+        menuResponse = new MenuResponse(MenuCatalog.fromItems(menuItems.values()));
+    }
+
+    @Benchmark
+    public byte[] perRequestGson() {
+        Map<String, Map<String, String>> menu = new HashMap<>();
+        for (Map.Entry<String, MenuItem> entry : menuItems.entrySet()) {
+            MenuItem item = entry.getValue();
+            Map<String, String> menuDetails = new HashMap<>();
+
+            menuDetails.put("itemid", item.getId());
+            menuDetails.put("price", "" + item.getPrice());
+            menuDetails.put("description", item.getDescription());
+            menuDetails.put("category", item.getCategory());
+
+            menu.put(item.getId(), menuDetails);
+        }
+        return new Gson().toJson(menu).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] perRequestGsonGzipped() throws IOException {
+        // what a gzip-accepting client cost when the server compressed on the fly
+        byte[] body = perRequestGson();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(body);
+        }
+        return buffer.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] cached() {
+        return menuResponse.getBody();
+    }
+
+    @Benchmark
+    public byte[] cachedGzipped() {
+        return menuResponse.getGzippedBody();
+    }
+}
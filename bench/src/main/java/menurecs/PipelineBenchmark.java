@@ -0,0 +1,79 @@
+package menurecs;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The in-process part of a recommendation with the R service stubbed out by a fixed DT score table: candidate
+ * preparation, scoring, and the optimization, for customers with and without CF data. Lives in the menurecs package
+ * to reach the package-private Candidates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PipelineBenchmark {
+    @Param({"true", "false"})
+    boolean hasCf;
+
+    @Param({"170", "1000"})
+    int numItems;
+
+    // "cplex" needs the native library on java.library.path
+    @Param({"java"})
+    String solverName;
+
+    @Param({"3"})
+    int outputLength;
+
+    MenuCatalog catalog;
+    short[] ranking;
+    int[] basketItems;
+    int[] basketQty;
+    DtRankTable dtRank;
+    Solver solver;
+
+    @Setup
+    public void setup() {
+        catalog = MenuCatalog.fromItems(SyntheticData.menuItems(numItems, 421).values());
+        Random random = new Random(421);
+        if (hasCf) {
+            int[] items = SyntheticData.ranking(random, numItems, 100);
+            ranking = new short[items.length];
+            for (int i = 0; i < items.length; i++) {
+                ranking[i] = (short) catalog.indexOf(SyntheticData.itemId(items[i]));
+            }
+        }
+        basketItems = new int[]{catalog.indexOf(SyntheticData.itemId(0)), catalog.indexOf(SyntheticData.itemId(1))};
+        basketQty = new int[]{1, 2};
+        dtRank = DtRankTable.parse(SyntheticData.dtScoresJson(numItems, 421));
+        solver = Solver.forName(solverName);
+    }
+
+    @Benchmark
+    public int prepare() {
+        Candidates candidates = Candidates.forCurrentThread();
+        candidates.prepare(catalog, ranking, null, basketItems, basketQty, basketItems.length);
+        return candidates.size;
+    }
+
+    @Benchmark
+    public int prepareAndScore() {
+        Candidates candidates = Candidates.forCurrentThread();
+        candidates.prepare(catalog, ranking, null, basketItems, basketQty, basketItems.length);
+        candidates.score(catalog, dtRank.ranksFor(catalog));
+        return candidates.scores[0];
+    }
+
+    @Benchmark
+    public SolverResult optimize() {
+        Candidates candidates = Candidates.forCurrentThread();
+        candidates.prepare(catalog, ranking, null, basketItems, basketQty, basketItems.length);
+        candidates.score(catalog, dtRank.ranksFor(catalog));
+        return solver.solve(candidates.toProblem(catalog, outputLength, 2 * 15.0));
+    }
+}
@@ -0,0 +1,125 @@
+package menurecs;
+
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request overhead of /recommend before and after the real work: parsing the query parameters into a
+ * RecommendRequest and serializing the result, against the way the route used to do both (each parameter looked up
+ * and parsed several times, the basket split into String arrays, a new Gson per response). Run with -prof gc for
+ * the bytes allocated per operation:
+ *
+ * java -jar target/benchmarks.jar RequestBenchmark -prof gc
+ *
+ * Lives in the menurecs package to reach the package-private parser and writer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestBenchmark {
+    @Param({"0", "3"})
+    int basketSize;
+
+    MenuCatalog catalog;
+    Map<String, String> params;
+    List<String> results;
+    OutputStream discard = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @Setup
+    public void setup() {
+        catalog = MenuCatalog.fromItems(SyntheticData.menuItems(170, 421).values());
+        StringJoiner itemIds = new StringJoiner(",");
+        StringJoiner itemQty = new StringJoiner(",");
+        for (int i = 0; i < basketSize; i++) {
+            itemIds.add(SyntheticData.itemId(i * 7));
+            itemQty.add(Integer.toString(i + 1));
+        }
+        params = new HashMap<>();
+        params.put("customerid", "1042");
+        params.put("outputlength", "5");
+        params.put("numpax", "2");
+        params.put("targetspend", "20");
+        params.put("itemids", itemIds.toString());
+        params.put("itemqty", itemQty.toString());
+        params.put("hour", "12");
+        params.put("school_holiday", "0");
+        params.put("public_holiday", "0");
+        params.put("weekday", "1");
+        params.put("outlet", "1");
+        params.put("day", "3");
+        results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            results.add(SyntheticData.itemId(i * 11));
+        }
+    }
+
+    @Benchmark
+    public RecommendRequest parse() throws InvalidRequestException {
+        return RecommendRequest.parse(params::get, catalog);
+    }
+
+    @Benchmark
+    public RecommendRequest previousParse() {
+        for (String param : RecommendRequest.REQUIRED_PARAMS) {
+            if (params.get(param) == null) {
+                throw new IllegalStateException(param);
+            }
+        }
+        for (String param : new String[]{"customerid", "outputlength", "numpax"}) {
+            Integer.parseInt(params.get(param));
+        }
+        for (String param : new String[]{"customerid", "outputlength", "numpax"}) {
+            Double.parseDouble(params.get(param));
+        }
+        String customerId = params.get("customerid");
+        int outputLength = Integer.parseInt(params.get("outputlength"));
+        int numPax = Integer.parseInt(params.get("numpax"));
+        double targetSpend = Double.parseDouble(params.get("targetspend"));
+        String[] itemIdsStrings = params.get("itemids").split(",");
+        String[] itemQtyStrings = params.get("itemqty").split(",");
+        int numBasketItems = 0;
+        int[] basketItems = new int[itemIdsStrings.length];
+        int[] basketQty = new int[itemIdsStrings.length];
+        if (itemIdsStrings.length != 1 || !itemIdsStrings[0].equals("")) {
+            for (int i = 0; i < itemIdsStrings.length; i++) {
+                basketItems[numBasketItems] = catalog.indexOf(itemIdsStrings[i]);
+                basketQty[numBasketItems] = Integer.parseInt(itemQtyStrings[i]);
+                numBasketItems++;
+            }
+        }
+        return new RecommendRequest(customerId, outputLength, numPax, targetSpend, basketItems, basketQty,
+                numBasketItems, new ScoringContext(params.get("hour"), params.get("school_holiday"),
+                params.get("public_holiday"), params.get("weekday"), params.get("outlet"), params.get("day")), 0);
+    }
+
+    @Benchmark
+    public int writeResults() throws IOException {
+        ResultWriter writer = ResultWriter.forCurrentThread().writeItemIds(results);
+        writer.writeTo(discard);
+        return writer.length();
+    }
+
+    @Benchmark
+    public int previousWriteResults() throws IOException {
+        byte[] body = new Gson().toJson(results).getBytes(StandardCharsets.UTF_8);
+        discard.write(body, 0, body.length);
+        return body.length;
+    }
+}
@@ -0,0 +1,137 @@
+package menurecs;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Generates menu, CF ranking and DT score data shaped like the production files, so the benchmarks run without them.
+ * Usable on its own to fill a data directory for the server:
+ *
+ * java -cp target/benchmarks.jar menurecs.SyntheticData dataDir [numItems] [numCustomers] [rankingLength]
+ */
+public class SyntheticData {
+    static final String[] CATEGORIES = {"Appetizer", "Soup", "Salad", "Main", "Pasta", "Pizza", "Rice", "Noodles",
+            "Side", "Dessert", "Drink", "Beer", "Wine", "Kids"};
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: SyntheticData dataDir [numItems] [numCustomers] [rankingLength]");
+            System.exit(2);
+        }
+        int numItems = args.length > 1 ? Integer.parseInt(args[1]) : 170;
+        int numCustomers = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+        int rankingLength = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+        File dir = new File(args[0]);
+        writeDataDir(dir, numItems, numCustomers, rankingLength, 421);
+        System.out.println("Wrote " + numItems + " items and " + numCustomers + " customers to " + dir);
+    }
+
+    public static String itemId(int item) {
+        return String.format("I%04d", item);
+    }
+
+    /**
+     * Customer ids are "1" to numCustomers; anyone else has no CF data.
+     */
+    public static String customerId(int customer) {
+        return Integer.toString(customer + 1);
+    }
+
+    public static Map<String, MenuItem> menuItems(int numItems, long seed) {
+        Map<String, MenuItem> menuItems = new HashMap<>();
+        Random random = new Random(seed);
+        for (int i = 0; i < numItems; i++) {
+            String id = itemId(i);
+            menuItems.put(id, new MenuItem(id, CATEGORIES[random.nextInt(CATEGORIES.length)], "Dish number " + i,
+                    1.5f + random.nextInt(120) * 0.25f));
+        }
+        return menuItems;
+    }
+
+    /**
+     * rankingLength distinct item numbers in random order.
+     */
+    public static int[] ranking(Random random, int numItems, int rankingLength) {
+        int[] items = new int[numItems];
+        for (int i = 0; i < numItems; i++) {
+            items[i] = i;
+        }
+        int length = Math.min(rankingLength, numItems);
+        for (int i = 0; i < length; i++) {
+            int j = i + random.nextInt(numItems - i);
+            int swap = items[i];
+            items[i] = items[j];
+            items[j] = swap;
+        }
+        return Arrays.copyOf(items, length);
+    }
+
+    /**
+     * A response body as the R service sends it: one object of item id (with R's trailing space) to score, plus
+     * TAKEAWAY.
+     */
+    public static String dtScoresJson(int numItems, long seed) {
+        Random random = new Random(seed);
+        StringBuilder json = new StringBuilder("[{");
+        for (int i = 0; i < numItems; i++) {
+            json.append('"').append(itemId(i)).append(" \": ").append(random.nextDouble()).append(", ");
+        }
+        json.append("\"TAKEAWAY \": 0.5}]");
+        return json.toString();
+    }
+
+    /**
+     * Write menu.csv and recommendation.csv into dir, creating it if needed.
+     */
+    public static void writeDataDir(File dir, int numItems, int numCustomers, int rankingLength, long seed)
+            throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+
+        try (CSVPrinter menu = new CSVPrinter(new FileWriter(new File(dir, "menu.csv")),
+                CSVFormat.DEFAULT.withHeader("Item", "Category", "Item Description", "Price"))) {
+            List<MenuItem> items = new ArrayList<>(menuItems(numItems, seed).values());
+            items.sort(Comparator.comparing(MenuItem::getId));
+            for (MenuItem item : items) {
+                menu.printRecord(item.getId(), item.getCategory(), item.getDescription(),
+                        String.format("%.2f", item.getPrice()));
+            }
+        }
+
+        String[] header = new String[rankingLength + 1];
+        header[0] = "user";
+        for (int i = 1; i <= rankingLength; i++) {
+            header[i] = Integer.toString(i);
+        }
+        Random random = new Random(seed);
+        try (CSVPrinter recommendation = new CSVPrinter(new FileWriter(new File(dir, "recommendation.csv")),
+                CSVFormat.DEFAULT.withHeader(header))) {
+            String[] row = new String[rankingLength + 1];
+            for (int c = 0; c < numCustomers; c++) {
+                int[] ranking = ranking(random, numItems, rankingLength);
+                Arrays.fill(row, "");
+                row[0] = customerId(c);
+                for (int i = 0; i < ranking.length; i++) {
+                    row[i + 1] = itemId(ranking[i]);
+                }
+                recommendation.printRecord((Object[]) row);
+            }
+        }
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,83 @@
+package menurecs;
+
+import spark.Request;
+import spark.Response;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import static spark.Spark.halt;
+
+/**
+ * Guards the operator routes, POST /admin/reload and the sold-out PUT/DELETE routes. They are off unless a token is
+ * configured, and then need it in an "Authorization: Bearer <token>" header. They are meant for tools on the
+ * operator's side, not the app, so they get no CORS headers either.
+ */
+public class AdminGuard {
+    private final byte[] token;
+
+    /**
+     * token null or empty turns the admin routes off.
+     */
+    public AdminGuard(String token) {
+        this.token = token == null || token.isEmpty() ? null : token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Guard with the token in -Dmenurecs.admin.token (none by default: admin routes off).
+     */
+    public static AdminGuard fromSystemProperties() {
+        return new AdminGuard(System.getProperty("menurecs.admin.token"));
+    }
+
+    /**
+     * Whether the request goes to an admin route; for a CORS preflight, whether the request it asks about would.
+     */
+    static boolean isAdminRoute(Request request) {
+        String method = request.requestMethod();
+        if (method.equals("OPTIONS")) {
+            method = request.headers("Access-Control-Request-Method");
+        }
+        return isAdminRoute(request.pathInfo(), method);
+    }
+
+    static boolean isAdminRoute(String path, String method) {
+        if (path == null) {
+            return false;
+        }
+        if (path.startsWith("/admin/")) {
+            return true;
+        }
+        // /outlets/:outlet/soldout and /outlets/:outlet/soldout/:itemid, except for reading them
+        if (!path.startsWith("/outlets/") || "GET".equalsIgnoreCase(method) || "HEAD".equalsIgnoreCase(method)) {
+            return false;
+        }
+        int outletEnd = path.indexOf('/', "/outlets/".length());
+        if (outletEnd < 0) {
+            return false;
+        }
+        String rest = path.substring(outletEnd);
+        return rest.equals("/soldout") || rest.startsWith("/soldout/");
+    }
+
+    /**
+     * Before-filter for the admin routes: halts with 403 when they are off, or 401 without the right token. A
+     * preflight for one is refused the same way.
+     */
+    void check(Request request, Response response) {
+        if (!isAdminRoute(request)) {
+            return;
+        }
+        if (token == null) {
+            halt(403, "Admin routes are disabled; set -Dmenurecs.admin.token to enable them");
+        }
+        String authorization = request.headers("Authorization");
+        byte[] given = authorization != null && authorization.startsWith("Bearer ")
+                ? authorization.substring("Bearer ".length()).trim().getBytes(StandardCharsets.UTF_8) : null;
+        // constant time, so the token can't be guessed a byte at a time
+        if (given == null || !MessageDigest.isEqual(given, token)) {
+            response.header("WWW-Authenticate", "Bearer");
+            halt(401, "Missing or wrong admin token");
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package menurecs;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs recommendation work on a fixed number of solve threads behind a short queue, so a spike is answered with fast
+ * rejections instead of every request slowing down. A request is rejected (OverloadedException) when the queue is
+ * full, or when it has not started within the queue timeout. Requests from priority outlets jump the queue.
+ */
+public class AdmissionController {
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int CANCELLED = 2;
+
+    private static final Metrics.Histogram QUEUE_WAIT = Metrics.histogram("menurecs_queue_wait_seconds",
+            "Time requests spent queued for a solve thread", "");
+    private static final Metrics.Counter REJECTED_QUEUE_FULL = Metrics.counter("menurecs_rejected_total",
+            "Requests shed by admission control", "reason=\"queue_full\"");
+    private static final Metrics.Counter REJECTED_TIMEOUT = Metrics.counter("menurecs_rejected_total",
+            "Requests shed by admission control", "reason=\"queue_timeout\"");
+
+    private final int concurrency;
+    private final int maxQueue;
+    private final long queueTimeoutMs;
+    private final int retryAfterSeconds;
+    private final Set<String> priorityOutlets;
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong admitted = new AtomicLong();
+
+    public AdmissionController(int concurrency, int maxQueue, long queueTimeoutMs, int retryAfterSeconds,
+            Set<String> priorityOutlets) {
+        this.concurrency = concurrency;
+        this.maxQueue = maxQueue;
+        this.queueTimeoutMs = queueTimeoutMs;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.priorityOutlets = priorityOutlets;
+        // the queue itself is unbounded, maxQueue is enforced on the way in
+        executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "solve-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Controller configured from system properties (defaults in brackets): menurecs.admission.concurrency (number of
+     * cores), menurecs.admission.maxQueue (2 x concurrency), menurecs.admission.queueTimeoutMs (250),
+     * menurecs.admission.retryAfterSeconds (1) and menurecs.admission.priorityOutlets (comma-separated, none).
+     */
+    public static AdmissionController fromSystemProperties() {
+        int concurrency = Integer.getInteger("menurecs.admission.concurrency",
+                Runtime.getRuntime().availableProcessors());
+        Set<String> priorityOutlets = new HashSet<>();
+        for (String outlet : System.getProperty("menurecs.admission.priorityOutlets", "").split(",")) {
+            if (!outlet.trim().isEmpty()) {
+                priorityOutlets.add(outlet.trim());
+            }
+        }
+        return new AdmissionController(concurrency,
+                Integer.getInteger("menurecs.admission.maxQueue", 2 * concurrency),
+                Integer.getInteger("menurecs.admission.queueTimeoutMs", 250),
+                Integer.getInteger("menurecs.admission.retryAfterSeconds", 1),
+                priorityOutlets);
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * Run work on a solve thread and wait for its result. It must start within the queue timeout; once started it runs
+     * to completion. The request's deadline is the work's own business: a request whose budget is already spent still
+     * gets a solve thread, and the solver answers with its fallback.
+     */
+    public <T> T run(String outlet, Callable<T> work) throws Exception {
+        if (queued.incrementAndGet() > maxQueue) {
+            queued.decrementAndGet();
+            REJECTED_QUEUE_FULL.increment();
+            throw new OverloadedException("Too many requests queued");
+        }
+        Task<T> task = new Task<>(priorityOutlets.contains(outlet) ? 0 : 1, sequence.getAndIncrement(), work);
+        executor.execute(task);
+
+        try {
+            try {
+                return task.result.get(queueTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (task.state.compareAndSet(QUEUED, CANCELLED)) {
+                    queued.decrementAndGet();
+                    REJECTED_TIMEOUT.increment();
+                    throw new OverloadedException("Timed out waiting for a solve thread");
+                }
+                // already running: let it finish
+                return task.result.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw (Error) e.getCause();
+        }
+    }
+
+    private class Task<T> implements Runnable, Comparable<Task<?>> {
+        final int priority;
+        final long sequence;
+        final Callable<T> work;
+        final long enqueuedNanos = System.nanoTime();
+        final AtomicInteger state = new AtomicInteger(QUEUED);
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        Task(int priority, long sequence, Callable<T> work) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.work = work;
+        }
+
+        @Override
+        public void run() {
+            if (!state.compareAndSet(QUEUED, RUNNING)) {
+                // the caller gave up waiting, and has already taken it off the count
+                return;
+            }
+            queued.decrementAndGet();
+            QUEUE_WAIT.recordSince(enqueuedNanos);
+            admitted.incrementAndGet();
+            try {
+                result.complete(work.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public int compareTo(Task<?> other) {
+            if (priority != other.priority) {
+                return Integer.compare(priority, other.priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("concurrency", concurrency);
+        stats.put("active", executor.getActiveCount());
+        stats.put("queued", queued.get());
+        stats.put("maxQueue", maxQueue);
+        stats.put("admitted", admitted.get());
+        stats.put("rejectedQueueFull", REJECTED_QUEUE_FULL.get());
+        stats.put("rejectedTimeout", REJECTED_TIMEOUT.get());
+        return stats;
+    }
+}
@@ -0,0 +1,62 @@
+package menurecs;
+
+/**
+ * Runs a fast fallback (greedy) first, so there is always an answer, then the exact backend under the request's
+ * deadline, warm-started from the fallback's picks. The exact answer wins if it is optimal or at least as good;
+ * otherwise, e.g. when the deadline cut it short, the fallback's does.
+ */
+public class AnytimeSolver implements Solver {
+    private static final Metrics.Counter EXACT_CHOSEN = Metrics.counter("menurecs_solutions_total",
+            "Solutions returned, by the solver that produced them", "chosen=\"exact\"");
+    private static final Metrics.Counter FALLBACK_CHOSEN = Metrics.counter("menurecs_solutions_total",
+            "Solutions returned, by the solver that produced them", "chosen=\"fallback\"");
+    private static final Metrics.Counter DEADLINE_MISSED = Metrics.counter("menurecs_deadline_missed_total",
+            "Exact solves cut off by the deadline before proving optimality", "");
+    private static final Metrics.Counter EXACT_FAILED = Metrics.counter("menurecs_exact_failures_total",
+            "Exact solves that gave no optimal answer with time left, e.g. CPLEX errors or CPLEX not available", "");
+
+    private final Solver exact;
+    private final Solver fallback;
+
+    public AnytimeSolver(Solver exact, Solver fallback) {
+        this.exact = exact;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public SolverResult solve(RecommendationProblem problem) {
+        return solve(problem, null, NO_DEADLINE);
+    }
+
+    @Override
+    public SolverResult solve(RecommendationProblem problem, int[] hint) {
+        return solve(problem, hint, NO_DEADLINE);
+    }
+
+    @Override
+    public SolverResult solve(RecommendationProblem problem, int[] hint, long deadlineNanos) {
+        SolverResult quick = fallback.solve(problem);
+        if (hint == null || hint.length == 0) {
+            hint = quick.selected;
+        }
+        SolverResult full = Solver.remainingNanos(deadlineNanos) > 0
+                ? exact.solve(problem, hint, deadlineNanos) : SolverResult.NO_SOLUTION;
+        if (!full.optimal) {
+            // the exact backends only stop short of optimal early on failure
+            if (Solver.remainingNanos(deadlineNanos) <= 0) {
+                DEADLINE_MISSED.increment();
+            } else if (quick.hasSolution()) {
+                EXACT_FAILED.increment();
+            }
+        }
+
+        if (full.hasSolution() && (full.optimal || !quick.hasSolution() || full.objective >= quick.objective)) {
+            EXACT_CHOSEN.increment();
+            return full;
+        }
+        if (quick.hasSolution()) {
+            FALLBACK_CHOSEN.increment();
+        }
+        return quick;
+    }
+}
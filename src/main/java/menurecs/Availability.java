@@ -0,0 +1,159 @@
+package menurecs;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Which items each outlet can't offer right now: the dishes it never serves (unavailable.csv, part of the data
+ * snapshot) plus whatever staff have marked sold out. Kept per outlet as a bitset over catalog indices, so building
+ * the candidates skips unavailable items with one bit test and they never reach the model.
+ *
+ * Readers on the request path only read an immutable set of bitsets through an AtomicReference. A sold-out change
+ * builds a new set and swaps it in, and a reload is picked up by whichever request first sees the new snapshot.
+ */
+public class Availability {
+    private final AtomicReference<Masks> masks;
+    private final AtomicLong updates = new AtomicLong();
+
+    public Availability(DataSnapshot snapshot) {
+        masks = new AtomicReference<>(build(snapshot, Collections.emptyMap()));
+    }
+
+    private static final class Masks {
+        // the snapshot the bitsets are for
+        final DataSnapshot snapshot;
+        // outlet => sold-out item ids; kept by id so they carry over to a reloaded menu
+        final Map<String, Set<String>> soldOut;
+        // outlet => bitset of the items it can't offer, for the snapshot's catalog
+        final Map<String, long[]> unavailable;
+
+        Masks(DataSnapshot snapshot, Map<String, Set<String>> soldOut, Map<String, long[]> unavailable) {
+            this.snapshot = snapshot;
+            this.soldOut = soldOut;
+            this.unavailable = unavailable;
+        }
+    }
+
+    /**
+     * Bitset over catalog indices of the items the outlet can't offer, or null if it has them all. Not to be
+     * modified.
+     */
+    public long[] unavailable(DataSnapshot snapshot, String outlet) {
+        return masksFor(snapshot).unavailable.get(outlet.trim());
+    }
+
+    /**
+     * Whether the outlet can offer all these items, e.g. for an answer worked out before one of them sold out.
+     */
+    public boolean allAvailable(DataSnapshot snapshot, String outlet, List<String> itemIds) {
+        long[] unavailable = unavailable(snapshot, outlet);
+        if (unavailable == null) {
+            return true;
+        }
+        for (String itemId : itemIds) {
+            int item = snapshot.catalog.indexOf(itemId);
+            if (item >= 0 && (unavailable[item >>> 6] & (1L << item)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Masks masksFor(DataSnapshot snapshot) {
+        Masks current = masks.get();
+        while (current.snapshot.version != snapshot.version) {
+            if (current.snapshot.version > snapshot.version) {
+                // a request still on the previous snapshot; don't rebuild the shared masks backwards
+                return build(snapshot, current.soldOut);
+            }
+            Masks rebuilt = build(snapshot, current.soldOut);
+            if (masks.compareAndSet(current, rebuilt)) {
+                return rebuilt;
+            }
+            current = masks.get();
+        }
+        return current;
+    }
+
+    /**
+     * Mark an item sold out at an outlet, or back in stock. Throws IllegalArgumentException for an item not on the
+     * menu.
+     */
+    public void setSoldOut(DataSnapshot snapshot, String outlet, String itemId, boolean soldOut) {
+        if (snapshot.catalog.indexOf(itemId) < 0) {
+            throw new IllegalArgumentException("Unknown item id: " + itemId);
+        }
+        update(snapshot, outlet.trim(), items -> {
+            if (soldOut) {
+                items.add(itemId);
+            } else {
+                items.remove(itemId);
+            }
+        });
+    }
+
+    /**
+     * Put everything sold out at an outlet back in stock, e.g. at the start of the day.
+     */
+    public void clearSoldOut(DataSnapshot snapshot, String outlet) {
+        update(snapshot, outlet.trim(), Set::clear);
+    }
+
+    private void update(DataSnapshot snapshot, String outlet, Consumer<Set<String>> change) {
+        while (true) {
+            // on the newer of the caller's snapshot and the one the shared masks are for
+            Masks current = masks.get();
+            DataSnapshot base = current.snapshot.version > snapshot.version ? current.snapshot : snapshot;
+            Map<String, Set<String>> soldOut = new HashMap<>(current.soldOut);
+            Set<String> items = new TreeSet<>(soldOut.getOrDefault(outlet, Collections.emptySet()));
+            change.accept(items);
+            if (items.isEmpty()) {
+                soldOut.remove(outlet);
+            } else {
+                soldOut.put(outlet, Collections.unmodifiableSet(items));
+            }
+            Masks next = build(base, Collections.unmodifiableMap(soldOut));
+            if (masks.compareAndSet(current, next)) {
+                updates.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    public Set<String> soldOut(String outlet) {
+        return masks.get().soldOut.getOrDefault(outlet.trim(), Collections.emptySet());
+    }
+
+    private static Masks build(DataSnapshot snapshot, Map<String, Set<String>> soldOut) {
+        MenuCatalog catalog = snapshot.catalog;
+        Map<String, long[]> unavailable = new HashMap<>();
+        for (Map.Entry<String, long[]> notServed : snapshot.notServed.entrySet()) {
+            unavailable.put(notServed.getKey(), notServed.getValue().clone());
+        }
+        for (Map.Entry<String, Set<String>> outlet : soldOut.entrySet()) {
+            long[] bits = unavailable.computeIfAbsent(outlet.getKey(), key -> new long[(catalog.size() + 63) >>> 6]);
+            for (String itemId : outlet.getValue()) {
+                int item = catalog.indexOf(itemId);
+                if (item >= 0) {
+                    bits[item >>> 6] |= 1L << item;
+                }
+            }
+        }
+        return new Masks(snapshot, soldOut, unavailable);
+    }
+
+    public Map<String, Object> getStats() {
+        Masks current = masks.get();
+        int soldOutItems = 0;
+        for (Set<String> items : current.soldOut.values()) {
+            soldOutItems += items.size();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("outletsWithUnavailableItems", current.unavailable.size());
+        stats.put("soldOutItems", soldOutItems);
+        stats.put("soldOutUpdates", updates.get());
+        return stats;
+    }
+}
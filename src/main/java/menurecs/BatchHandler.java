@@ -0,0 +1,146 @@
+package menurecs;
+
+import com.google.gson.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Request;
+import spark.Response;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+
+/**
+ * POST /recommend/batch: a JSON array of request objects with the same parameters as GET /recommend. Each request
+ * takes the same path as a GET /recommend (precomputed answers, the result cache, the shared DT score cache and the
+ * admission controller's solve pool); up to threads of them are in flight at once. Results stream back as
+ * newline-delimited JSON in completion order, each tagged with its index in the batch. A failed one has a status: 400
+ * for a bad request, 503 when admission control turned it away, 500 for anything else:
+ *
+ * {"index":0,"results":["I001","I002"],"source":"cplex"}
+ * {"index":1,"status":400,"error":"Missing parameter(s): numpax"}
+ * {"index":2,"status":503,"error":"Too many requests queued"}
+ */
+public class BatchHandler {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchHandler.class);
+
+    // these only wait on the admission controller, which bounds the solves
+    private final ExecutorService workers;
+    private final int maxRequests;
+
+    public BatchHandler(int threads, int maxRequests) {
+        this.maxRequests = maxRequests;
+        workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "batch-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Handler configured from -Dmenurecs.batch.threads (default: number of cores) and -Dmenurecs.batch.maxRequests.
+     */
+    public static BatchHandler fromSystemProperties() {
+        return new BatchHandler(
+                Integer.getInteger("menurecs.batch.threads", Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger("menurecs.batch.maxRequests", 1000));
+    }
+
+    public Object handle(DataSnapshot snapshot, Request request, Response response) throws Exception {
+        JsonArray batch;
+        try {
+            batch = new JsonParser().parse(request.body()).getAsJsonArray();
+        } catch (JsonParseException | IllegalStateException e) {
+            response.status(400);
+            return "Request body must be a JSON array of request objects";
+        }
+        if (batch.size() > maxRequests) {
+            response.status(413);
+            return "Too many requests in batch: " + batch.size() + " (max " + maxRequests + ")";
+        }
+
+        // validate everything up front
+        BlockingQueue<String> finished = new LinkedBlockingQueue<>();
+        for (int i = 0; i < batch.size(); i++) {
+            int index = i;
+            RecommendRequest recommendRequest;
+            try {
+                if (!batch.get(i).isJsonObject()) {
+                    throw new InvalidRequestException("Request must be a JSON object");
+                }
+                JsonObject params = batch.get(i).getAsJsonObject();
+                recommendRequest = RecommendRequest.parse(name -> paramAsString(params, name), snapshot.catalog);
+            } catch (InvalidRequestException e) {
+                Metrics.BAD_REQUESTS.increment();
+                finished.add(errorLine(index, 400, e.getMessage()));
+                continue;
+            } catch (Exception e) {
+                Metrics.INTERNAL_ERRORS.increment();
+                finished.add(errorLine(index, 500,
+                        "Some exception occurred: " + e.getClass() + ": " + e.getMessage()));
+                continue;
+            }
+
+            workers.execute(() -> {
+                try {
+                    Recommendation recommendation = MenuEngine.recommend(snapshot, recommendRequest,
+                            MenuEngine.deadlineFor(System.nanoTime(), recommendRequest.deadlineMs));
+                    finished.add(resultLine(index, recommendation));
+                } catch (OverloadedException e) {
+                    finished.add(errorLine(index, 503, e.getMessage()));
+                } catch (IllegalArgumentException e) {
+                    // parameters the scorer turned down
+                    Metrics.BAD_REQUESTS.increment();
+                    finished.add(errorLine(index, 400, e.getMessage()));
+                } catch (Exception e) {
+                    LOG.warn("Could not compute recommendation in batch", e);
+                    Metrics.INTERNAL_ERRORS.increment();
+                    finished.add(errorLine(index, 500,
+                            "Some exception occurred: " + e.getClass() + ": " + e.getMessage()));
+                }
+            });
+        }
+
+        // stream each line as soon as it is done; a committed response is left alone by Spark
+        HttpServletResponse raw = response.raw();
+        raw.setStatus(200);
+        raw.setContentType("application/x-ndjson");
+        OutputStream out = raw.getOutputStream();
+        for (int i = 0; i < batch.size(); i++) {
+            out.write(finished.take().getBytes(StandardCharsets.UTF_8));
+            out.write('\n');
+            out.flush();
+        }
+        return "";
+    }
+
+    private static String paramAsString(JsonObject params, String name) {
+        JsonElement value = params.get(name);
+        if (value == null || value.isJsonNull()) {
+            return null;
+        }
+        // numbers keep their literal form, so 2 stays "2" rather than "2.0"
+        return value.isJsonPrimitive() ? value.getAsString() : value.toString();
+    }
+
+    private static String resultLine(int index, Recommendation recommendation) {
+        JsonObject line = new JsonObject();
+        line.addProperty("index", index);
+        JsonArray items = new JsonArray();
+        for (String itemId : recommendation.itemIds) {
+            items.add(itemId);
+        }
+        line.add("results", items);
+        line.addProperty("source", recommendation.source);
+        return line.toString();
+    }
+
+    private static String errorLine(int index, int status, String error) {
+        JsonObject line = new JsonObject();
+        line.addProperty("index", index);
+        line.addProperty("status", status);
+        line.addProperty("error", error);
+        return line.toString();
+    }
+}
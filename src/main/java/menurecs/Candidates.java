@@ -0,0 +1,149 @@
+package menurecs;
+
+import java.util.Arrays;
+
+/**
+ * One request's candidate items and their model inputs, as parallel arrays over catalog indices. Each request thread
+ * reuses its own instance, so preparing and scoring candidates doesn't allocate once the arrays have grown to the
+ * catalog size; only the first size entries of each array are meaningful.
+ */
+class Candidates {
+    private static final ThreadLocal<Candidates> PER_THREAD = ThreadLocal.withInitial(Candidates::new);
+
+    int size;
+    int[] items = new int[0];
+    int[] scores = new int[0];
+    double[] prices = new double[0];
+    int[] categories = new int[0];
+    // bitset over catalog indices of the items already in the basket
+    long[] basket = new long[0];
+    boolean hasCF;
+    double curTotalPrice;
+
+    static Candidates forCurrentThread() {
+        return PER_THREAD.get();
+    }
+
+    /**
+     * Candidates are the customer's CF ranking, best first, or the whole menu if ranking is null; either way less
+     * the items the outlet can't offer (unavailable, a bitset over catalog indices, null if none) and the basket
+     * items, whose prices go into curTotalPrice.
+     */
+    void prepare(MenuCatalog catalog, short[] ranking, long[] unavailable, int[] basketItems, int[] basketQty,
+            int numBasketItems) {
+        ensureCapacity(catalog.size());
+
+        // process data: currently ordered items => add to current total, exclude from recommendation candidates
+        Arrays.fill(basket, 0, (catalog.size() + 63) >>> 6, 0L);
+        curTotalPrice = 0.0;
+        for (int i = 0; i < numBasketItems; i++) {
+            int item = basketItems[i];
+            curTotalPrice += catalog.prices[item] * basketQty[i];
+            basket[item >>> 6] |= 1L << item;
+        }
+
+        // process data: only get the current customer (from collaborative filtering)
+        size = 0;
+        hasCF = ranking != null;
+        if (hasCF) {
+            for (short item : ranking) {
+                add(catalog, item, unavailable);
+            }
+        } else {
+            for (int item = 0; item < catalog.size(); item++) {
+                add(catalog, item, unavailable);
+            }
+        }
+    }
+
+    private void add(MenuCatalog catalog, int item, long[] unavailable) {
+        if ((basket[item >>> 6] & (1L << item)) != 0
+                || unavailable != null && (unavailable[item >>> 6] & (1L << item)) != 0) {
+            return;
+        }
+        items[size] = item;
+        prices[size] = catalog.prices[item];
+        categories[size] = catalog.categoryIdx[item];
+        size++;
+    }
+
+    /**
+     * Add qty of item to the basket, dropping it from the candidates if it was one. Scores need recomputing after.
+     */
+    void addToBasket(MenuCatalog catalog, int item, int qty) {
+        curTotalPrice += catalog.prices[item] * qty;
+        if ((basket[item >>> 6] & (1L << item)) != 0) {
+            return;
+        }
+        basket[item >>> 6] |= 1L << item;
+        for (int i = 0; i < size; i++) {
+            if (items[i] == item) {
+                int tail = size - i - 1;
+                System.arraycopy(items, i + 1, items, i, tail);
+                System.arraycopy(prices, i + 1, prices, i, tail);
+                System.arraycopy(categories, i + 1, categories, i, tail);
+                size--;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Take qty of item out of the basket. Once none is left (emptied), it is a candidate again at its place in order,
+     * the candidate position per catalog index as prepare would have it (-1 if never a candidate). Scores need
+     * recomputing after.
+     */
+    void removeFromBasket(MenuCatalog catalog, int item, int qty, boolean emptied, int[] order) {
+        curTotalPrice -= catalog.prices[item] * qty;
+        if (!emptied || (basket[item >>> 6] & (1L << item)) == 0) {
+            return;
+        }
+        basket[item >>> 6] &= ~(1L << item);
+        if (order[item] < 0) {
+            return;
+        }
+        int position = 0;
+        while (position < size && order[items[position]] < order[item]) {
+            position++;
+        }
+        int tail = size - position;
+        System.arraycopy(items, position, items, position + 1, tail);
+        System.arraycopy(prices, position, prices, position + 1, tail);
+        System.arraycopy(categories, position, categories, position + 1, tail);
+        items[position] = item;
+        prices[position] = catalog.prices[item];
+        categories[position] = catalog.categoryIdx[item];
+        size++;
+    }
+
+    /**
+     * Score = decision-tree rank, plus the CF rank (size for the best down to 1) for customers with CF data.
+     */
+    void score(MenuCatalog catalog, int[] dtRanks) {
+        for (int i = 0; i < size; i++) {
+            int dtRank = dtRanks[items[i]];
+            if (dtRank < 0) {
+                throw new IllegalArgumentException("No decision-tree score for item " + catalog.itemIds[items[i]]);
+            }
+            scores[i] = hasCF ? dtRank + size - i : dtRank;
+        }
+    }
+
+    RecommendationProblem toProblem(MenuCatalog catalog, int outputLength, double budget) {
+        return new RecommendationProblem(scores, prices, categories, size, catalog.numCategories(), outputLength,
+                budget, curTotalPrice);
+    }
+
+    private void ensureCapacity(int catalogSize) {
+        if (items.length < catalogSize) {
+            items = new int[catalogSize];
+            scores = new int[catalogSize];
+            prices = new double[catalogSize];
+            categories = new int[catalogSize];
+        }
+        int words = (catalogSize + 63) >>> 6;
+        if (basket.length < words) {
+            basket = new long[words];
+        }
+    }
+}
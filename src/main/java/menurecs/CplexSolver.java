@@ -0,0 +1,187 @@
+package menurecs;
+
+import ilog.concert.*;
+import ilog.cplex.IloCplex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * Solves the recommendation model with CPLEX, building a fresh IloCplex model per call.
+ */
+public class CplexSolver implements Solver {
+    private static final Logger LOG = LoggerFactory.getLogger(CplexSolver.class);
+
+    // model construction vs the CPLEX solve itself, inside the "solve" stage
+    private static final Metrics.Histogram BUILD_TIME = Metrics.histogram("menurecs_cplex_seconds",
+            "Time spent in CPLEX per phase", "phase=\"build\"");
+    private static final Metrics.Histogram SOLVE_TIME = Metrics.histogram("menurecs_cplex_seconds",
+            "Time spent in CPLEX per phase", "phase=\"solve\"");
+
+    /**
+     * Whether CPLEX can be used here: its classes are on the classpath and its native library loads.
+     */
+    public static boolean isAvailable() {
+        try {
+            new IloCplex().end();
+            return true;
+        } catch (IloException | UnsatisfiedLinkError | NoClassDefFoundError e) {
+            LOG.debug("CPLEX is not available", e);
+            return false;
+        }
+    }
+
+    @Override
+    public SolverResult solve(RecommendationProblem problem) {
+        return solve(problem, null);
+    }
+
+    @Override
+    public SolverResult solve(RecommendationProblem problem, int[] hint) {
+        return solve(problem, hint, NO_DEADLINE);
+    }
+
+    @Override
+    public SolverResult solve(RecommendationProblem problem, int[] hint, long deadlineNanos) {
+        int numRecItems = problem.getNumItems();
+        // scalProd wants the scores array to match xs exactly
+        int[] itemScores = Arrays.copyOf(problem.itemScores, numRecItems);
+        double[] itemPrices = problem.itemPrices;
+        int[] itemCategories = problem.itemCategories;
+
+        long start = System.nanoTime();
+        try {
+            // create active model.
+            // IloCplex requires linking to the native CPLEX shared library, as defined in the JVM's java.library.path
+            // system property, as it represents an instance of CPLEX itself. the property must be set to dir containing
+            // libcplexXXXX.jnilib (XXXX version matching the cplex.jar file), etc.
+            // e.g. -Djava.library.path=/Applications/IBM/ILOG/CPLEX_Studio1261/cplex/bin/x86-64_osx
+            IloCplex cplex = new IloCplex();
+            if (!LOG.isDebugEnabled()) {
+                // the engine log goes to stdout by default
+                cplex.setOut(null);
+            }
+
+            try {
+                // DECISION VARIABLES
+                // x and y dvars are boolean
+                // z dvars are doubles, 0 <= z <= 1000.0
+                IloIntVar[] xs = cplex.boolVarArray(numRecItems);
+                IloIntVar[] ys = cplex.boolVarArray(problem.numCategories);
+                IloNumVar[] zs = cplex.numVarArray(numRecItems, 0.0, RecommendationProblem.MAX_OVER_BUDGET);
+
+
+                // OBJECTIVE FUNCTION
+                // available operators:
+                // abs, constant, diff [subtract], max, min, negative, prod, scalProd, square, sum
+
+                // maximize sum(scores * x) - (300 * sum(y) + 3000 * sum(z))
+                IloLinearIntExpr totalScores = cplex.scalProd(itemScores, xs);
+                IloNumExpr penalty = cplex.sum(cplex.prod(RecommendationProblem.CATEGORY_PENALTY, cplex.sum(ys)),
+                        cplex.prod(RecommendationProblem.OVER_BUDGET_PENALTY, cplex.sum(zs)));
+                IloNumExpr obj = cplex.diff(totalScores, penalty);
+                cplex.addMaximize(obj);
+
+
+                // CONSTRAINTS
+                // available operators:
+                // addEq, addGe, addLe, and, not, or, eq, ge, le, ifThen
+
+                // number of things to output
+                // outputLength == sum(xs)
+                cplex.addEq(problem.outputLength, cplex.sum(xs), "outputLength");
+
+                // make z reflect how much over budget each recommended item is
+                // itemPrice_i * x_i + currentTotalPrices <= (1 + Z_i) * (budget), for all i
+                double budget = problem.budget;
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Budget: {}, remaining budget: {}", budget, budget - problem.curTotalPrice);
+                }
+                for (int i = 0; i < numRecItems; i++) {
+                    IloNumExpr totalPrice = cplex.sum(cplex.prod(itemPrices[i], xs[i]), problem.curTotalPrice);
+                    cplex.addLe(totalPrice, cplex.prod(cplex.sum(1, zs[i]), budget), "budget");
+                }
+
+                // make the category's y = 1 if exceeding 1 item per category
+                IloLinearIntExpr[] categoryConstraints = new IloLinearIntExpr[problem.numCategories];
+                // init for all categories
+                for (int i = 0; i < categoryConstraints.length; i++) {
+                    categoryConstraints[i] = cplex.linearIntExpr();
+                }
+                // attach each item to its category
+                for (int i = 0; i < numRecItems; i++) {
+                    categoryConstraints[itemCategories[i]].addTerm(1, xs[i]);
+                }
+                // x <= 1 + My
+                for (int i = 0; i < categoryConstraints.length; i++) {
+                    cplex.addLe(categoryConstraints[i],
+                            cplex.sum(1, cplex.prod(RecommendationProblem.LARGE_M, ys[i])), "category" + i);
+                }
+
+                // write this lp file out for debugging with interactive cplex optimizer
+//                cplex.exportModel("test.lp");
+
+                // warm start: CPLEX repairs a partial or infeasible start into a first incumbent
+                if (hint != null && hint.length > 0) {
+                    IloNumVar[] startVars = new IloNumVar[hint.length];
+                    double[] startValues = new double[hint.length];
+                    for (int i = 0; i < hint.length; i++) {
+                        startVars[i] = xs[hint[i]];
+                        startValues[i] = 1.0;
+                    }
+                    cplex.addMIPStart(startVars, startValues);
+                }
+
+                start = BUILD_TIME.recordSince(start);
+                // whatever is left of the deadline after building the model; the incumbent is returned on timeout
+                long remaining = Solver.remainingNanos(deadlineNanos);
+                if (remaining <= 0) {
+                    return SolverResult.NO_SOLUTION;
+                }
+                if (remaining != Long.MAX_VALUE) {
+                    cplex.setParam(IloCplex.DoubleParam.TiLim, remaining / 1e9);
+                }
+                LOG.debug("Starting CPLEX");
+
+                // solve
+                boolean solved = cplex.solve();
+                SOLVE_TIME.recordSince(start);
+                if (solved) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("CPLEX status {}, objective value {}", cplex.getStatus(), cplex.getObjValue());
+                    }
+
+                    int numSelected = 0;
+                    boolean[] chosen = new boolean[numRecItems];
+                    for (int i = 0; i < numRecItems; i++) {
+                        // cannot test == 1 here because cplex sometimes returns 0.99999999999908 when bool var is true
+                        if (cplex.getValue(xs[i]) != 0) {
+                            chosen[i] = true;
+                            numSelected++;
+                        }
+                    }
+                    int[] selected = new int[numSelected];
+                    for (int i = 0, j = 0; i < numRecItems; i++) {
+                        if (chosen[i]) {
+                            selected[j++] = i;
+                        }
+                    }
+                    return new SolverResult(selected, cplex.getObjValue(),
+                            cplex.getStatus() == IloCplex.Status.Optimal, "cplex");
+                } else {
+                    LOG.info("No solution found, CPLEX status {}", cplex.getStatus());
+                }
+            } finally {
+                // cleanup
+                cplex.end();
+            }
+        } catch (IloException e) {
+            LOG.error("Encountered some problem with CPLEX", e);
+        } catch (UnsatisfiedLinkError e) {
+            LOG.error("Could not find CPLEX shared library", e);
+        }
+
+        return SolverResult.NO_SOLUTION;
+    }
+}
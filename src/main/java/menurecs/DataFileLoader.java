@@ -1,19 +1,32 @@
 package menurecs;
 
 import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.*;
 
 public class DataFileLoader {
     String dataDir;
+    // workers parsing recommendation.csv, -Dmenurecs.load.threads (default: number of cores)
+    final int loadThreads;
+    // the scorer's fingerprint, to tell whether precomputed answers still match the DT scores
+    final long scoresFingerprint;
 
     public DataFileLoader(String dataDir) {
+        this(dataDir, 0);
+    }
+
+    public DataFileLoader(String dataDir, long scoresFingerprint) {
         this.dataDir = dataDir;
+        this.scoresFingerprint = scoresFingerprint;
+        loadThreads = Integer.getInteger("menurecs.load.threads", Runtime.getRuntime().availableProcessors());
     }
 
     public Map<String, String> readConfig() throws IOException {
@@ -37,16 +50,34 @@ public class DataFileLoader {
     public Map<String, MenuItem> readMenu() throws IOException {
         Map<String, MenuItem> itemMap = new HashMap<>();
 
-        Reader in = new FileReader(dataDir + File.separator + "menu.csv");
-        CSVFormat format = CSVFormat.DEFAULT.withHeader().withSkipHeaderRecord();
-        for (CSVRecord record : format.parse(in)) {
-            String itemId = record.get("Item");
-            String category = record.get("Category");
-            String description = record.get("Item Description");
-            float price = Float.parseFloat(record.get("Price"));
-            MenuItem item = new MenuItem(itemId, category, description, price);
-            itemMap.put(itemId, item);
+        long start = System.nanoTime();
+        int rows = 0;
+        int malformedRows = 0;
+        File file = new File(dataDir, "menu.csv");
+        try (CSVParser parser = open(file)) {
+            int itemColumn = column(parser, file, "Item");
+            int categoryColumn = column(parser, file, "Category");
+            int descriptionColumn = column(parser, file, "Item Description");
+            int priceColumn = column(parser, file, "Price");
+            int minSize = Math.max(Math.max(itemColumn, categoryColumn), Math.max(descriptionColumn, priceColumn)) + 1;
+            for (CSVRecord record : parser) {
+                rows++;
+                if (record.size() < minSize || record.get(itemColumn).isEmpty()) {
+                    malformedRows++;
+                    continue;
+                }
+                try {
+                    String itemId = record.get(itemColumn);
+                    float price = Float.parseFloat(record.get(priceColumn));
+                    MenuItem item = new MenuItem(itemId, record.get(categoryColumn), record.get(descriptionColumn),
+                            price);
+                    itemMap.put(itemId, item);
+                } catch (NumberFormatException e) {
+                    malformedRows++;
+                }
+            }
         }
+        report(file, rows, malformedRows, start);
 
         return itemMap;
     }
@@ -54,34 +85,160 @@ public class DataFileLoader {
     public Map<String, Integer> readCurrent() throws IOException {
         Map<String, Integer> currentMap = new HashMap<>();
 
-        Reader in = new FileReader(dataDir + File.separator + "current.csv");
-        CSVFormat format = CSVFormat.DEFAULT.withHeader().withSkipHeaderRecord();
-        for (CSVRecord record : format.parse(in)) {
-            String itemId = record.get("Item");
-            int quantity = Integer.parseInt(record.get("Quantity"));
-            currentMap.put(itemId, quantity);
+        long start = System.nanoTime();
+        int rows = 0;
+        int malformedRows = 0;
+        File file = new File(dataDir, "current.csv");
+        try (CSVParser parser = open(file)) {
+            int itemColumn = column(parser, file, "Item");
+            int quantityColumn = column(parser, file, "Quantity");
+            for (CSVRecord record : parser) {
+                rows++;
+                if (record.size() <= Math.max(itemColumn, quantityColumn)) {
+                    malformedRows++;
+                    continue;
+                }
+                try {
+                    currentMap.put(record.get(itemColumn), Integer.parseInt(record.get(quantityColumn)));
+                } catch (NumberFormatException e) {
+                    malformedRows++;
+                }
+            }
         }
+        report(file, rows, malformedRows, start);
 
         return currentMap;
     }
 
-    public Map<String, List<String>> readRecommendation() throws IOException {
-        Map<String, List<String>> recommendations = new HashMap<>();
-
-        Reader in = new FileReader(dataDir + File.separator + "recommendation.csv");
-        CSVFormat format = CSVFormat.DEFAULT.withHeader().withSkipHeaderRecord();
-        for (CSVRecord record : format.parse(in)) {
-            String user = record.get("user");
-            List<String> recItems = new ArrayList<>();
-            // iterate over items
-            for (int i = 1; i <= 162; i++) {
-                // needs to be a string instead of int, as it's a column name, not index
-                String item = record.get("" + i);
-                if (!item.equals("TAKEAWAY")) {
-                    recItems.add(item);
+    // a CSV file with a header row, read as UTF-8
+    private static CSVParser open(File file) throws IOException {
+        return CSVFormat.DEFAULT.withHeader().withSkipHeaderRecord()
+                .parse(Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8));
+    }
+
+    // position of a column, looked up once per file rather than per record
+    private static int column(CSVParser parser, File file, String name) throws IOException {
+        Integer column = parser.getHeaderMap().get(name);
+        if (column == null) {
+            throw new IOException(file + " has no " + name + " column");
+        }
+        return column;
+    }
+
+    private static void report(File file, int rows, int malformedRows, long startNanos) {
+        long nanos = Math.max(1, System.nanoTime() - startNanos);
+        System.out.println("Read " + rows + " rows from " + file + " in " + nanos / 1000000 + " ms ("
+                + (long) (rows * 1e9 / nanos) + " rows/s)"
+                + (malformedRows > 0 ? ", skipped " + malformedRows + " malformed rows" : ""));
+    }
+
+    public MenuCatalog readCatalog() throws IOException {
+        return MenuCatalog.fromItems(readMenu().values());
+    }
+
+    /**
+     * The CF rankings: memory-mapped from recommendation.bin if it has been converted (see RankingStoreConverter),
+     * otherwise parsed from recommendation.csv.
+     */
+    public RankingStore readRankingStore(MenuCatalog catalog) throws IOException {
+        File binFile = new File(dataDir, "recommendation.bin");
+        if (binFile.exists()) {
+            File csvFile = new File(dataDir, "recommendation.csv");
+            if (csvFile.lastModified() > binFile.lastModified()) {
+                System.out.println("Warning: " + csvFile + " is newer than " + binFile
+                        + ", which is used instead; run RankingStoreConverter again");
+            }
+            return MappedRankingStore.open(binFile.toPath(), catalog);
+        }
+        return new InMemoryRankingStore(readRecommendation(catalog));
+    }
+
+    /**
+     * Identifies the rankings file readRankingStore would read, by name, size and modification time, so answers
+     * precomputed from other rankings are recognized as stale.
+     */
+    public long rankingsFingerprint() {
+        File file = new File(dataDir, "recommendation.bin");
+        if (!file.exists()) {
+            file = new File(dataDir, "recommendation.csv");
+        }
+        return Objects.hash(file.getName(), file.length(), file.lastModified());
+    }
+
+    /**
+     * The items each outlet doesn't serve, from unavailable.csv (columns Outlet and Item), as bitsets over catalog
+     * indices keyed by outlet. Empty if there is no such file; items not on the menu are skipped.
+     */
+    public Map<String, long[]> readNotServed(MenuCatalog catalog) throws IOException {
+        Map<String, long[]> notServed = new HashMap<>();
+        File file = new File(dataDir, "unavailable.csv");
+        if (!file.exists()) {
+            return notServed;
+        }
+        long start = System.nanoTime();
+        int rows = 0;
+        int malformedRows = 0;
+        int unknownItems = 0;
+        try (CSVParser parser = open(file)) {
+            int outletColumn = column(parser, file, "Outlet");
+            int itemColumn = column(parser, file, "Item");
+            for (CSVRecord record : parser) {
+                rows++;
+                if (record.size() <= Math.max(outletColumn, itemColumn)) {
+                    malformedRows++;
+                    continue;
                 }
+                int item = catalog.indexOf(record.get(itemColumn).trim());
+                if (item < 0) {
+                    unknownItems++;
+                    continue;
+                }
+                long[] bits = notServed.computeIfAbsent(record.get(outletColumn).trim(),
+                        outlet -> new long[(catalog.size() + 63) >>> 6]);
+                bits[item >>> 6] |= 1L << item;
             }
-            recommendations.put(user, recItems);
+        }
+        report(file, rows, malformedRows, start);
+        if (unknownItems > 0) {
+            System.out.println("Skipped " + unknownItems + " unavailable items not on the menu");
+        }
+        return notServed;
+    }
+
+    /**
+     * The empty-basket answers written by "MenuEngine precompute", or null if there are none or they were computed
+     * from different inputs: menu, rankings, DT scores or not-served items.
+     */
+    public PrecomputedStore readPrecomputed(MenuCatalog catalog, PrecomputedStore.Inputs inputs) throws IOException {
+        File file = new File(dataDir, Precomputer.OUTPUT_FILE);
+        if (!file.exists()) {
+            return null;
+        }
+        if (inputs.scores == Scorer.UNKNOWN_FINGERPRINT) {
+            System.out.println("WARNING: ignoring " + file + ": the DT scores can't be checked against it, set "
+                    + "-Dmenurecs.scoring.modelVersion to the R model's version (and rerun MenuEngine precompute)");
+            return null;
+        }
+        try {
+            return PrecomputedStore.open(file.toPath(), catalog, inputs);
+        } catch (PrecomputedStore.StaleException e) {
+            System.out.println("Ignoring " + file + ": " + e.getMessage() + ", run MenuEngine precompute again");
+            return null;
+        }
+    }
+
+    /**
+     * Each customer's CF ranking, best first, as catalog item indices, parsed in parallel on loadThreads workers
+     * (see RecommendationCsvReader). Items not on the menu are dropped, and malformed rows skipped.
+     */
+    public Map<String, short[]> readRecommendation(MenuCatalog catalog) throws IOException {
+        long start = System.nanoTime();
+        File file = new File(dataDir, "recommendation.csv");
+        RecommendationCsvReader reader = new RecommendationCsvReader(catalog, loadThreads);
+        Map<String, short[]> recommendations = reader.read(file.toPath());
+        report(file, reader.rows, reader.malformedRows, start);
+        if (reader.unknownItems > 0) {
+            System.out.println("Skipped " + reader.unknownItems + " recommended items not on the menu");
         }
 
         return recommendations;
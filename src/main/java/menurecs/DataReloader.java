@@ -0,0 +1,147 @@
+package menurecs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current DataSnapshot and rebuilds it off the request path: on demand (the admin endpoint), or when the
+ * data files change if watching is enabled. A new snapshot is swapped in only once it has fully loaded; a failed
+ * reload keeps serving the old one.
+ */
+public class DataReloader implements Closeable {
+    // data files change in bursts while being copied in, so wait for them to go quiet
+    private static final long QUIET_PERIOD_MS = 2000;
+
+    private final DataFileLoader loader;
+    private final AtomicReference<DataSnapshot> current = new AtomicReference<>();
+    private final Object reloadLock = new Object();
+    private volatile String lastReloadError;
+    private volatile Thread watcher;
+
+    public DataReloader(DataFileLoader loader) throws IOException {
+        this.loader = loader;
+        current.set(DataSnapshot.load(loader, 1));
+    }
+
+    public DataSnapshot current() {
+        return current.get();
+    }
+
+    /**
+     * Load a new snapshot and swap it in. Requests already running finish on the snapshot they took.
+     */
+    public DataSnapshot reload() throws IOException {
+        synchronized (reloadLock) {
+            DataSnapshot previous = current.get();
+            DataSnapshot next;
+            try {
+                next = DataSnapshot.load(loader, previous.version + 1);
+            } catch (IOException | RuntimeException e) {
+                lastReloadError = e.getClass().getSimpleName() + ": " + e.getMessage();
+                throw e;
+            }
+            current.set(next);
+            lastReloadError = null;
+            System.out.println("Reloaded data as snapshot version " + next.version + " in " + next.loadMillis + " ms");
+
+            // a mapped file stays readable after its channel closes, so in-flight lookups are unaffected
+            if (previous.rankings instanceof Closeable) {
+                ((Closeable) previous.rankings).close();
+            }
+            if (previous.precomputed != null) {
+                previous.precomputed.close();
+            }
+            return next;
+        }
+    }
+
+    /**
+     * Watch the data directory and reload after its files change.
+     */
+    public void startWatching() throws IOException {
+        Path dir = Paths.get(loader.dataDir);
+        WatchService watchService = dir.getFileSystem().newWatchService();
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        Thread thread = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    WatchKey key = watchService.take();
+                    boolean relevant = pollRelevant(key);
+                    // keep draining until nothing has changed for the quiet period
+                    while (true) {
+                        WatchKey more = watchService.poll(QUIET_PERIOD_MS, TimeUnit.MILLISECONDS);
+                        if (more == null) {
+                            break;
+                        }
+                        relevant |= pollRelevant(more);
+                    }
+                    if (relevant) {
+                        try {
+                            reload();
+                        } catch (IOException | RuntimeException e) {
+                            System.err.println("Error: could not reload data files, keeping snapshot version "
+                                    + current().version);
+                            e.printStackTrace();
+                        }
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // shutting down
+            } finally {
+                try {
+                    watchService.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, "data-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        watcher = thread;
+    }
+
+    private static boolean pollRelevant(WatchKey key) {
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Object context = event.context();
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || context == null) {
+                relevant = true;
+                continue;
+            }
+            String name = context.toString();
+            relevant |= name.equals("menu.csv") || name.equals("recommendation.csv")
+                    || name.equals("recommendation.bin") || name.equals(Precomputer.OUTPUT_FILE)
+                    || name.equals("unavailable.csv");
+        }
+        key.reset();
+        return relevant;
+    }
+
+    public Map<String, Object> getStats() {
+        DataSnapshot snapshot = current.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("version", snapshot.version);
+        stats.put("loadedAt", snapshot.loadedAtMillis);
+        stats.put("loadMillis", snapshot.loadMillis);
+        stats.put("menuItems", snapshot.catalog.size());
+        stats.put("customers", snapshot.rankings.size());
+        stats.put("precomputedCustomers", snapshot.precomputed != null ? snapshot.precomputed.size() : 0);
+        stats.put("watching", watcher != null);
+        stats.put("lastReloadError", lastReloadError);
+        return stats;
+    }
+
+    @Override
+    public void close() throws IOException {
+        Thread thread = watcher;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package menurecs;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Everything loaded from the data directory, as one immutable unit. A request takes the current snapshot once and
+ * uses only that, so a reload never shows it a half-updated menu or item indices from two different catalogs.
+ */
+public class DataSnapshot {
+    final long version;
+    final MenuCatalog catalog;
+    final RankingStore rankings;
+    final MenuResponse menuResponse;
+    // empty-basket answers from the offline job, null if there are none for this menu
+    final PrecomputedStore precomputed;
+    // outlet => bitset over catalog indices of the items it doesn't serve
+    final Map<String, long[]> notServed;
+    // what precomputed answers for this snapshot must have been computed from
+    final PrecomputedStore.Inputs inputs;
+    final long loadedAtMillis;
+    final long loadMillis;
+
+    DataSnapshot(long version, MenuCatalog catalog, RankingStore rankings, MenuResponse menuResponse,
+            PrecomputedStore precomputed, Map<String, long[]> notServed, PrecomputedStore.Inputs inputs,
+            long loadedAtMillis, long loadMillis) {
+        this.version = version;
+        this.catalog = catalog;
+        this.rankings = rankings;
+        this.menuResponse = menuResponse;
+        this.precomputed = precomputed;
+        this.notServed = notServed;
+        this.inputs = inputs;
+        this.loadedAtMillis = loadedAtMillis;
+        this.loadMillis = loadMillis;
+    }
+
+    static DataSnapshot load(DataFileLoader loader, long version) throws IOException {
+        long start = System.nanoTime();
+        MenuCatalog catalog = loader.readCatalog();
+        System.out.println("Read menu items: " + catalog.size());
+        MenuResponse menuResponse = new MenuResponse(catalog);
+
+        long rankingsFingerprint = loader.rankingsFingerprint();
+        RankingStore rankings = loader.readRankingStore(catalog);
+        System.out.println("Read recommendations: " + rankings.size());
+
+        Map<String, long[]> notServed = loader.readNotServed(catalog);
+        if (!notServed.isEmpty()) {
+            System.out.println("Read unavailable items for outlets: " + notServed.size());
+        }
+
+        PrecomputedStore.Inputs inputs = new PrecomputedStore.Inputs(catalog, rankingsFingerprint,
+                loader.scoresFingerprint, notServed);
+        PrecomputedStore precomputed = loader.readPrecomputed(catalog, inputs);
+        if (precomputed != null) {
+            System.out.println("Read precomputed recommendations: " + precomputed.size());
+        }
+
+        long loadMillis = (System.nanoTime() - start) / 1000000;
+        return new DataSnapshot(version, catalog, rankings, menuResponse, precomputed, notServed, inputs,
+                System.currentTimeMillis(), loadMillis);
+    }
+
+    /**
+     * The offline job's answer to the request, or null if it has none (see PrecomputedStore.get).
+     */
+    Recommendation precomputed(RecommendRequest request) {
+        return precomputed != null ? precomputed.get(request) : null;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public MenuCatalog getCatalog() {
+        return catalog;
+    }
+
+    public RankingStore getRankings() {
+        return rankings;
+    }
+
+    public MenuResponse getMenuResponse() {
+        return menuResponse;
+    }
+}
@@ -0,0 +1,105 @@
+package menurecs;
+
+import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Decision-tree scores for one scoring context, already sorted: itemIds[0] has the best score. Ranks count down from
+ * the number of items (best) to 1 (worst). Built once per R response and then shared read-only.
+ */
+public class DtRankTable {
+    private static final Logger LOG = LoggerFactory.getLogger(DtRankTable.class);
+
+    final String[] itemIds;
+    final double[] scores;
+    // ranks by catalog index for the last catalog asked for
+    private volatile CatalogRanks catalogRanks;
+
+    private static class CatalogRanks {
+        final MenuCatalog catalog;
+        final int[] ranks;
+
+        CatalogRanks(MenuCatalog catalog, int[] ranks) {
+            this.catalog = catalog;
+            this.ranks = ranks;
+        }
+    }
+
+    DtRankTable(String[] itemIds, double[] scores) {
+        this.itemIds = itemIds;
+        this.scores = scores;
+    }
+
+    /**
+     * Parse the R service's JSON response, [{"itemid": score, ...}], leaving out TAKEAWAY.
+     */
+    static DtRankTable parse(String jsonResponse) {
+        // extract json response and make it into key-value pairs
+        HashMap<String, Double>[] jsonArray = new Gson().fromJson(jsonResponse, HashMap[].class);
+        Map<String, Double> dtMap = jsonArray[0];
+        List<String> itemIds = new ArrayList<>(dtMap.size());
+        List<Double> scores = new ArrayList<>(dtMap.size());
+        for (Map.Entry<String, Double> entry : dtMap.entrySet()) {
+            String itemId = entry.getKey().trim();
+            if (!itemId.equals("TAKEAWAY")) {
+                itemIds.add(itemId);
+                scores.add(entry.getValue());
+            }
+        }
+        double[] scoreArray = new double[scores.size()];
+        for (int i = 0; i < scoreArray.length; i++) {
+            scoreArray[i] = scores.get(i);
+        }
+        LOG.debug("Original number of DT recommendations: {}", itemIds.size());
+        return sorted(itemIds.toArray(new String[0]), scoreArray);
+    }
+
+    /**
+     * Table of the given scores, sorted best first. Ties go by item id, so the order doesn't depend on where the
+     * scores came from: the R response's JSON object has no order once parsed, and the embedded table has its own.
+     */
+    static DtRankTable sorted(String[] itemIds, double[] scores) {
+        Integer[] order = new Integer[scores.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int byScore = Double.compare(scores[b], scores[a]);
+            return byScore != 0 ? byScore : itemIds[a].compareTo(itemIds[b]);
+        });
+        String[] sortedIds = new String[order.length];
+        double[] sortedScores = new double[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedIds[i] = itemIds[order[i]];
+            sortedScores[i] = scores[order[i]];
+        }
+        return new DtRankTable(sortedIds, sortedScores);
+    }
+
+    public int size() {
+        return itemIds.length;
+    }
+
+    /**
+     * Ranks indexed by catalog item index, -1 for menu items without a score. Computed once per catalog.
+     */
+    public int[] ranksFor(MenuCatalog catalog) {
+        CatalogRanks cached = catalogRanks;
+        if (cached != null && cached.catalog == catalog) {
+            return cached.ranks;
+        }
+        int[] ranks = new int[catalog.size()];
+        Arrays.fill(ranks, -1);
+        for (int i = 0; i < itemIds.length; i++) {
+            int item = catalog.indexOf(itemIds[i]);
+            if (item >= 0) {
+                ranks[item] = itemIds.length - i;
+            }
+        }
+        catalogRanks = new CatalogRanks(catalog, ranks);
+        return ranks;
+    }
+}
@@ -0,0 +1,112 @@
+package menurecs;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decision-tree rank tables keyed by scoring context. Bounded (least recently used entries go first) and entries
+ * expire after a TTL. Concurrent misses for the same context share a single scorer call.
+ */
+public class DtScoreCache {
+    private final Scorer scorer;
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LinkedHashMap<ScoringContext, CacheEntry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loadFailures = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private static class CacheEntry {
+        final CompletableFuture<DtRankTable> future = new CompletableFuture<>();
+        volatile long loadedAt;
+
+        boolean isExpired(long now, long ttlNanos) {
+            // a load still in flight never expires, later callers just wait on it
+            return future.isDone() && now - loadedAt > ttlNanos;
+        }
+    }
+
+    public DtScoreCache(Scorer scorer, int maxEntries, long ttl, TimeUnit unit) {
+        this.scorer = scorer;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = unit.toNanos(ttl);
+        entries = new LinkedHashMap<ScoringContext, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ScoringContext, CacheEntry> eldest) {
+                if (size() > DtScoreCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Cache configured from -Dmenurecs.dtCache.maxEntries and -Dmenurecs.dtCache.ttlSeconds.
+     */
+    public static DtScoreCache fromSystemProperties(Scorer scorer) {
+        return new DtScoreCache(scorer,
+                Integer.getInteger("menurecs.dtCache.maxEntries", 1024),
+                Long.getLong("menurecs.dtCache.ttlSeconds", 300L), TimeUnit.SECONDS);
+    }
+
+    public CompletableFuture<DtRankTable> getAsync(ScoringContext context) {
+        long now = System.nanoTime();
+        CacheEntry entry;
+        boolean load = false;
+        synchronized (entries) {
+            entry = entries.get(context);
+            if (entry == null || entry.isExpired(now, ttlNanos)) {
+                entry = new CacheEntry();
+                entries.put(context, entry);
+                load = true;
+            }
+        }
+
+        if (!load) {
+            hits.incrementAndGet();
+            return entry.future;
+        }
+        misses.incrementAndGet();
+        CacheEntry loading = entry;
+        scorer.scoreAsync(context).whenComplete((table, e) -> {
+            if (e != null) {
+                // don't cache failures, the next request retries
+                loadFailures.incrementAndGet();
+                synchronized (entries) {
+                    entries.remove(context, loading);
+                }
+                loading.future.completeExceptionally(e);
+            } else {
+                loading.loadedAt = System.nanoTime();
+                loading.future.complete(table);
+            }
+        });
+        return loading.future;
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (entries) {
+            stats.put("size", entries.size());
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("loadFailures", loadFailures.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+}
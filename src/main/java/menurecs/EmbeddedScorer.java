@@ -0,0 +1,134 @@
+package menurecs;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decision-tree scores from a table exported from the R model, evaluated in-process: no network hop, no JSON, and no
+ * R installation needed. dt_scores.csv has one row per scoring context, the context columns followed by one score
+ * column per item:
+ *
+ * hour,school_holiday,public_holiday,weekday,outlet,day,I001,I002,...
+ * 12,0,0,1,1,1,0.247,0.403,...
+ *
+ * Each row becomes a ready-sorted DtRankTable at load time, so scoring is a hash lookup.
+ */
+public class EmbeddedScorer implements Scorer {
+    static final String FILE_NAME = "dt_scores.csv";
+    static final String[] CONTEXT_COLUMNS = {"hour", "school_holiday", "public_holiday", "weekday", "outlet", "day"};
+
+    private final Map<ScoringContext, DtRankTable> tables;
+    private final int numItems;
+    private final long fingerprint;
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong unknownContexts = new AtomicLong();
+
+    EmbeddedScorer(Map<ScoringContext, DtRankTable> tables, int numItems) {
+        this.tables = tables;
+        this.numItems = numItems;
+        // the whole table, independent of map order
+        long hash = 1125899906842597L;
+        for (Map.Entry<ScoringContext, DtRankTable> table : tables.entrySet()) {
+            hash += table.getKey().hashCode() * 1000003L + Arrays.hashCode(table.getValue().itemIds) * 31L
+                    + Arrays.hashCode(table.getValue().scores);
+        }
+        fingerprint = hash != UNKNOWN_FINGERPRINT ? hash : 1;
+    }
+
+    public static EmbeddedScorer load(File file) throws IOException {
+        Map<ScoringContext, DtRankTable> tables = new HashMap<>();
+        String[] itemIds;
+        try (Reader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+             CSVParser parser = CSVFormat.DEFAULT.withHeader().withSkipHeaderRecord().parse(in)) {
+            Map<String, Integer> header = parser.getHeaderMap();
+            int[] contextColumns = new int[CONTEXT_COLUMNS.length];
+            for (int i = 0; i < CONTEXT_COLUMNS.length; i++) {
+                Integer column = header.get(CONTEXT_COLUMNS[i]);
+                if (column == null) {
+                    throw new IOException(file + " has no " + CONTEXT_COLUMNS[i] + " column");
+                }
+                contextColumns[i] = column;
+            }
+
+            // every other column but TAKEAWAY is an item, in header order
+            List<Integer> itemColumns = new ArrayList<>();
+            List<String> itemNames = new ArrayList<>();
+            for (Map.Entry<String, Integer> column : header.entrySet()) {
+                String name = column.getKey().trim();
+                if (!Arrays.asList(CONTEXT_COLUMNS).contains(name) && !name.equals("TAKEAWAY")) {
+                    itemColumns.add(column.getValue());
+                    itemNames.add(name);
+                }
+            }
+            itemIds = itemNames.toArray(new String[0]);
+
+            double[] scores = new double[itemIds.length];
+            for (CSVRecord record : parser) {
+                ScoringContext context = ScoringContext.normalized(record.get(contextColumns[0]),
+                        record.get(contextColumns[1]), record.get(contextColumns[2]), record.get(contextColumns[3]),
+                        record.get(contextColumns[4]), record.get(contextColumns[5]));
+                for (int i = 0; i < scores.length; i++) {
+                    scores[i] = Double.parseDouble(record.get(itemColumns.get(i)));
+                }
+                tables.put(context, DtRankTable.sorted(itemIds, scores));
+            }
+        }
+        System.out.println("Read DT score table: " + tables.size() + " contexts, " + itemIds.length + " items");
+        return new EmbeddedScorer(tables, itemIds.length);
+    }
+
+    @Override
+    public DtRankTable score(ScoringContext context) {
+        lookups.incrementAndGet();
+        // normalized by RecommendRequest.parse, as the table's contexts are on load
+        DtRankTable table = tables.get(context);
+        if (table == null) {
+            unknownContexts.incrementAndGet();
+            throw new IllegalArgumentException("No DT scores for context " + context);
+        }
+        return table;
+    }
+
+    @Override
+    public CompletableFuture<DtRankTable> scoreAsync(ScoringContext context) {
+        CompletableFuture<DtRankTable> future = new CompletableFuture<>();
+        try {
+            future.complete(score(context));
+        } catch (IllegalArgumentException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * The contexts the table covers.
+     */
+    public Set<ScoringContext> contexts() {
+        return Collections.unmodifiableSet(tables.keySet());
+    }
+
+    @Override
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("contexts", tables.size());
+        stats.put("items", numItems);
+        stats.put("lookups", lookups.get());
+        stats.put("unknownContexts", unknownContexts.get());
+        return stats;
+    }
+}
@@ -0,0 +1,140 @@
+package menurecs;
+
+import java.util.Arrays;
+
+/**
+ * Pure-Java exact solver for the recommendation model, no native library needed.
+ *
+ * Fixing x, the best z for each item is max(0, (price * x + curTotalPrice) / budget - 1), so every item carries a
+ * weight (its score less the extra over-budget penalty it causes) and the only interaction left is the category
+ * penalty. Within a category the best k items are always the k heaviest, so a knapsack-style DP over categories on
+ * the number of items picked so far is exact: O(numItems * outputLength) work. That is cheap enough that a warm-start
+ * hint is not worth using, so it is ignored.
+ */
+public class ExactSolver implements Solver {
+
+    @Override
+    public SolverResult solve(RecommendationProblem problem) {
+        return solve(problem, null, NO_DEADLINE);
+    }
+
+    /**
+     * The DP has no usable partial answer, so running out of time gives NO_SOLUTION.
+     */
+    @Override
+    public SolverResult solve(RecommendationProblem problem, int[] hint, long deadlineNanos) {
+        int n = problem.getNumItems();
+        int outputLength = problem.outputLength;
+        int numCategories = problem.numCategories;
+        if (outputLength < 0 || outputLength > n) {
+            return SolverResult.NO_SOLUTION;
+        }
+
+        // every unpicked item still has its own z, which is the same for all of them
+        double baseZ = problem.overBudget(0.0);
+        if (Double.isNaN(baseZ)) {
+            return SolverResult.NO_SOLUTION;
+        }
+
+        // weights; items that can never be picked are left out of their category
+        double[] weights = new double[n];
+        int[] categorySizes = new int[numCategories + 1];
+        for (int i = 0; i < n; i++) {
+            double z = problem.overBudget(problem.itemPrices[i]);
+            if (Double.isNaN(z)) {
+                weights[i] = Double.NaN;
+                continue;
+            }
+            weights[i] = problem.itemScores[i] - RecommendationProblem.OVER_BUDGET_PENALTY * (z - baseZ);
+            categorySizes[problem.itemCategories[i] + 1]++;
+        }
+
+        // bucket items by category (categoryStart[c] .. categoryStart[c + 1]), heaviest first within each
+        int[] categoryStart = categorySizes;
+        for (int c = 0; c < numCategories; c++) {
+            categoryStart[c + 1] += categoryStart[c];
+        }
+        int[] order = new int[categoryStart[numCategories]];
+        int[] fill = new int[numCategories];
+        for (int i = 0; i < n; i++) {
+            if (!Double.isNaN(weights[i])) {
+                int c = problem.itemCategories[i];
+                order[categoryStart[c] + fill[c]++] = i;
+            }
+        }
+        for (int c = 0; c < numCategories; c++) {
+            sortByWeightDescending(order, categoryStart[c], categoryStart[c + 1], weights);
+        }
+
+        // best[j] = best total weight less category penalties with j items picked from the categories so far
+        int width = outputLength + 1;
+        double[] best = new double[width];
+        double[] next = new double[width];
+        int[] taken = new int[numCategories * width];
+        Arrays.fill(best, Double.NEGATIVE_INFINITY);
+        best[0] = 0.0;
+        for (int c = 0; c < numCategories; c++) {
+            // out of time, or cancelled by a portfolio race another strategy already won
+            if ((deadlineNanos != NO_DEADLINE && Solver.remainingNanos(deadlineNanos) <= 0)
+                    || Thread.currentThread().isInterrupted()) {
+                return SolverResult.NO_SOLUTION;
+            }
+            int start = categoryStart[c];
+            int maxTake = (int) Math.min(categoryStart[c + 1] - start, 1 + (long) RecommendationProblem.LARGE_M);
+            for (int j = 0; j < width; j++) {
+                double bestValue = best[j];
+                int bestTake = 0;
+                double prefix = 0.0;
+                for (int k = 1; k <= maxTake && k <= j; k++) {
+                    prefix += weights[order[start + k - 1]];
+                    double value = best[j - k] + prefix - (k > 1 ? RecommendationProblem.CATEGORY_PENALTY : 0.0);
+                    if (value > bestValue) {
+                        bestValue = value;
+                        bestTake = k;
+                    }
+                }
+                next[j] = bestValue;
+                taken[c * width + j] = bestTake;
+            }
+            double[] swap = best;
+            best = next;
+            next = swap;
+        }
+        if (best[outputLength] == Double.NEGATIVE_INFINITY) {
+            return SolverResult.NO_SOLUTION;
+        }
+
+        // walk the choices back from the last category
+        boolean[] chosen = new boolean[n];
+        for (int c = numCategories - 1, j = outputLength; c >= 0; c--) {
+            int k = taken[c * width + j];
+            for (int t = 0; t < k; t++) {
+                chosen[order[categoryStart[c] + t]] = true;
+            }
+            j -= k;
+        }
+        int[] selected = new int[outputLength];
+        for (int i = 0, j = 0; i < n; i++) {
+            if (chosen[i]) {
+                selected[j++] = i;
+            }
+        }
+
+        double objective = best[outputLength] - RecommendationProblem.OVER_BUDGET_PENALTY * baseZ * n;
+        return new SolverResult(selected, objective, true, "exact");
+    }
+
+    // insertion sort: categories hold a handful of items, and this keeps ties in index order
+    private static void sortByWeightDescending(int[] order, int from, int to, double[] weights) {
+        for (int i = from + 1; i < to; i++) {
+            int item = order[i];
+            double weight = weights[item];
+            int j = i - 1;
+            while (j >= from && weights[order[j]] < weight) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = item;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package menurecs;
+
+/**
+ * Fast heuristic for the recommendation model: picks outputLength items one at a time, each time the item with the
+ * largest gain in objective (its score less the over-budget penalty it adds, less the category penalty if it is the
+ * second pick from its category). O(numItems * outputLength), not necessarily optimal.
+ */
+public class GreedySolver implements Solver {
+
+    @Override
+    public SolverResult solve(RecommendationProblem problem) {
+        int n = problem.getNumItems();
+        int outputLength = problem.outputLength;
+        if (outputLength < 0 || outputLength > n) {
+            return SolverResult.NO_SOLUTION;
+        }
+        double baseZ = problem.overBudget(0.0);
+        if (Double.isNaN(baseZ)) {
+            return SolverResult.NO_SOLUTION;
+        }
+
+        // same weights as ExactSolver; NaN for items that can never be picked
+        double[] weights = new double[n];
+        for (int i = 0; i < n; i++) {
+            double z = problem.overBudget(problem.itemPrices[i]);
+            weights[i] = Double.isNaN(z) ? Double.NaN
+                    : problem.itemScores[i] - RecommendationProblem.OVER_BUDGET_PENALTY * (z - baseZ);
+        }
+
+        boolean[] chosen = new boolean[n];
+        int[] perCategory = new int[problem.numCategories];
+        for (int pick = 0; pick < outputLength; pick++) {
+            int bestItem = -1;
+            double bestGain = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                if (chosen[i] || Double.isNaN(weights[i])) {
+                    continue;
+                }
+                // the category penalty is paid once, by the second item in a category
+                double gain = perCategory[problem.itemCategories[i]] == 1
+                        ? weights[i] - RecommendationProblem.CATEGORY_PENALTY : weights[i];
+                if (gain > bestGain) {
+                    bestGain = gain;
+                    bestItem = i;
+                }
+            }
+            if (bestItem < 0) {
+                return SolverResult.NO_SOLUTION;
+            }
+            chosen[bestItem] = true;
+            perCategory[problem.itemCategories[bestItem]]++;
+        }
+
+        int[] selected = new int[outputLength];
+        for (int i = 0, j = 0; i < n; i++) {
+            if (chosen[i]) {
+                selected[j++] = i;
+            }
+        }
+        return new SolverResult(selected, problem.objective(selected), false, "greedy");
+    }
+}
@@ -0,0 +1,31 @@
+package menurecs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rankings parsed from recommendation.csv and held on the heap.
+ */
+public class InMemoryRankingStore implements RankingStore {
+    private final Map<String, short[]> rankings;
+
+    public InMemoryRankingStore(Map<String, short[]> rankings) {
+        this.rankings = rankings;
+    }
+
+    @Override
+    public short[] get(String customerId) {
+        return rankings.get(customerId);
+    }
+
+    @Override
+    public List<String> customerIds() {
+        return new ArrayList<>(rankings.keySet());
+    }
+
+    @Override
+    public int size() {
+        return rankings.size();
+    }
+}
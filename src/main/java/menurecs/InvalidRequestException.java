@@ -0,0 +1,12 @@
+package menurecs;
+
+/**
+ * A request parameter failed validation; the message is returned to the client as is.
+ */
+class InvalidRequestException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    InvalidRequestException(String message) {
+        super(message);
+    }
+}
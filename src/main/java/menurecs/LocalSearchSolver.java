@@ -0,0 +1,94 @@
+package menurecs;
+
+/**
+ * Improvement heuristic for the recommendation model: starts from the hint (when it is a complete, feasible
+ * selection) or the greedy picks, then keeps making the best single swap of a picked item for an unpicked one until
+ * no swap improves the objective. Each pass is O(outputLength * numItems) using the same item weights as
+ * ExactSolver, with only the two categories a swap touches re-priced. Stops early at the deadline or when its thread
+ * is interrupted, returning the selection so far; never claims optimality.
+ */
+public class LocalSearchSolver implements Solver {
+    private final Solver start = new GreedySolver();
+
+    @Override
+    public SolverResult solve(RecommendationProblem problem) {
+        return solve(problem, null, NO_DEADLINE);
+    }
+
+    @Override
+    public SolverResult solve(RecommendationProblem problem, int[] hint, long deadlineNanos) {
+        int n = problem.getNumItems();
+        int[] selected = hint != null && hint.length == problem.outputLength
+                && !Double.isNaN(problem.objective(hint)) ? hint.clone() : start.solve(problem).selected;
+        if (selected == null) {
+            return SolverResult.NO_SOLUTION;
+        }
+
+        double baseZ = problem.overBudget(0.0);
+        double[] weights = new double[n];
+        for (int i = 0; i < n; i++) {
+            double z = problem.overBudget(problem.itemPrices[i]);
+            weights[i] = Double.isNaN(z) ? Double.NaN
+                    : problem.itemScores[i] - RecommendationProblem.OVER_BUDGET_PENALTY * (z - baseZ);
+        }
+        boolean[] chosen = new boolean[n];
+        int[] perCategory = new int[problem.numCategories];
+        for (int i : selected) {
+            chosen[i] = true;
+            perCategory[problem.itemCategories[i]]++;
+        }
+
+        while (true) {
+            if ((deadlineNanos != NO_DEADLINE && Solver.remainingNanos(deadlineNanos) <= 0)
+                    || Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            int bestOut = -1;
+            int bestIn = -1;
+            double bestGain = 1e-9;
+            for (int out = 0; out < selected.length; out++) {
+                int removed = selected[out];
+                int removedCategory = problem.itemCategories[removed];
+                // taking the item out lifts its category's penalty if that leaves one item there
+                double removeGain = -weights[removed]
+                        + (perCategory[removedCategory] == 2 ? RecommendationProblem.CATEGORY_PENALTY : 0.0);
+                for (int added = 0; added < n; added++) {
+                    if (chosen[added] || Double.isNaN(weights[added])) {
+                        continue;
+                    }
+                    int addedCategory = problem.itemCategories[added];
+                    double gain;
+                    if (addedCategory == removedCategory) {
+                        gain = weights[added] - weights[removed];
+                    } else {
+                        gain = removeGain + weights[added]
+                                - (perCategory[addedCategory] == 1 ? RecommendationProblem.CATEGORY_PENALTY : 0.0);
+                    }
+                    if (gain > bestGain) {
+                        bestGain = gain;
+                        bestOut = out;
+                        bestIn = added;
+                    }
+                }
+            }
+            if (bestOut < 0) {
+                break;
+            }
+            int removed = selected[bestOut];
+            chosen[removed] = false;
+            perCategory[problem.itemCategories[removed]]--;
+            chosen[bestIn] = true;
+            perCategory[problem.itemCategories[bestIn]]++;
+            selected[bestOut] = bestIn;
+        }
+
+        // results list the indices in ascending order
+        int[] result = new int[selected.length];
+        for (int i = 0, j = 0; i < n; i++) {
+            if (chosen[i]) {
+                result[j++] = i;
+            }
+        }
+        return new SolverResult(result, problem.objective(result), false, "local");
+    }
+}
@@ -0,0 +1,147 @@
+package menurecs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rankings read on demand from a memory-mapped recommendation.bin, as written by RankingStoreConverter. Opening only
+ * reads the header, so startup doesn't depend on the number of customers.
+ *
+ * Layout (big-endian):
+ * <pre>
+ * int magic, int version
+ * int numItems, then numItems item ids as (short length, UTF-8 bytes)
+ * int numCustomers, then numCustomers long record offsets, sorted by customer id (unsigned byte order)
+ * records: short idLength, UTF-8 customer id, short count, count shorts indexing the item ids above
+ * </pre>
+ */
+public class MappedRankingStore implements RankingStore, Closeable {
+    static final int MAGIC = 0x4d52524b; // "MRRK"
+    static final int VERSION = 1;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int numCustomers;
+    private final int indexStart;
+    // file item index => catalog index, -1 for items no longer on the menu
+    private final int[] catalogItems;
+
+    private MappedRankingStore(FileChannel channel, MappedByteBuffer buffer, MenuCatalog catalog) throws IOException {
+        this.channel = channel;
+        this.buffer = buffer;
+
+        ByteBuffer header = buffer.duplicate();
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a ranking store file");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported ranking store version " + version);
+        }
+        catalogItems = new int[header.getInt()];
+        for (int i = 0; i < catalogItems.length; i++) {
+            catalogItems[i] = catalog.indexOf(readString(header));
+        }
+        numCustomers = header.getInt();
+        indexStart = header.position();
+    }
+
+    public static MappedRankingStore open(Path path, MenuCatalog catalog) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Ranking store larger than 2GB: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedRankingStore(channel, buffer, catalog);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public short[] get(String customerId) {
+        byte[] key = customerId.getBytes(StandardCharsets.UTF_8);
+        // binary search the offset index; absolute reads only, so the buffer is safely shared between threads
+        int low = 0;
+        int high = numCustomers - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int record = (int) buffer.getLong(indexStart + mid * 8);
+            int cmp = compareKey(record, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return readRanking(record + 2 + key.length);
+            }
+        }
+        return null;
+    }
+
+    private int compareKey(int record, byte[] key) {
+        int length = buffer.getShort(record) & 0xffff;
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = (buffer.get(record + 2 + i) & 0xff) - (key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - key.length;
+    }
+
+    private short[] readRanking(int position) {
+        int count = buffer.getShort(position) & 0xffff;
+        short[] ranking = new short[count];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            int item = catalogItems[buffer.getShort(position + 2 + i * 2) & 0xffff];
+            if (item >= 0) {
+                ranking[n++] = (short) item;
+            }
+        }
+        return n == count ? ranking : Arrays.copyOf(ranking, n);
+    }
+
+    @Override
+    public List<String> customerIds() {
+        List<String> customerIds = new ArrayList<>(numCustomers);
+        for (int i = 0; i < numCustomers; i++) {
+            int record = (int) buffer.getLong(indexStart + i * 8);
+            byte[] key = new byte[buffer.getShort(record) & 0xffff];
+            for (int j = 0; j < key.length; j++) {
+                key[j] = buffer.get(record + 2 + j);
+            }
+            customerIds.add(new String(key, StandardCharsets.UTF_8));
+        }
+        return customerIds;
+    }
+
+    @Override
+    public int size() {
+        return numCustomers;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
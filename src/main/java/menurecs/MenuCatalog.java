@@ -0,0 +1,116 @@
+package menurecs;
+
+import java.util.*;
+
+/**
+ * The menu with item ids and categories interned to dense indices, held as parallel arrays. Item index i is the
+ * i-th item id in sorted order; category indices follow the order categories first appear in.
+ */
+public class MenuCatalog {
+    final String[] itemIds;
+    final String[] descriptions;
+    final float[] prices;
+    final int[] categoryIdx;
+    final String[] categoryNames;
+    private final Map<String, Integer> itemIndex;
+
+    private MenuCatalog(String[] itemIds, String[] descriptions, float[] prices, int[] categoryIdx,
+            String[] categoryNames) {
+        this.itemIds = itemIds;
+        this.descriptions = descriptions;
+        this.prices = prices;
+        this.categoryIdx = categoryIdx;
+        this.categoryNames = categoryNames;
+        itemIndex = new HashMap<>(itemIds.length * 2);
+        for (int i = 0; i < itemIds.length; i++) {
+            itemIndex.put(itemIds[i], i);
+        }
+    }
+
+    public static MenuCatalog fromItems(Collection<MenuItem> menuItems) {
+        List<MenuItem> items = new ArrayList<>(menuItems);
+        items.sort(Comparator.comparing(MenuItem::getId));
+        if (items.size() > Short.MAX_VALUE) {
+            // rankings store item indices as shorts
+            throw new IllegalArgumentException("Too many menu items: " + items.size());
+        }
+
+        int n = items.size();
+        String[] itemIds = new String[n];
+        String[] descriptions = new String[n];
+        float[] prices = new float[n];
+        int[] categoryIdx = new int[n];
+        Map<String, Integer> categories = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++) {
+            MenuItem item = items.get(i);
+            itemIds[i] = item.getId();
+            descriptions[i] = item.getDescription();
+            prices[i] = item.getPrice();
+            Integer category = categories.get(item.getCategory());
+            if (category == null) {
+                category = categories.size();
+                categories.put(item.getCategory(), category);
+            }
+            categoryIdx[i] = category;
+        }
+        return new MenuCatalog(itemIds, descriptions, prices, categoryIdx,
+                categories.keySet().toArray(new String[categories.size()]));
+    }
+
+    /**
+     * Index of an item id, or -1 if it isn't on the menu.
+     */
+    public int indexOf(String itemId) {
+        Integer index = itemIndex.get(itemId);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * indexOf for the item id at [from, to) of a longer string, e.g. one entry of a comma-separated list, without
+     * copying it out: a binary search over the sorted ids.
+     */
+    public int indexOf(CharSequence chars, int from, int to) {
+        int low = 0;
+        int high = itemIds.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            String itemId = itemIds[mid];
+            int length = Math.min(to - from, itemId.length());
+            int cmp = 0;
+            for (int i = 0; i < length && cmp == 0; i++) {
+                cmp = chars.charAt(from + i) - itemId.charAt(i);
+            }
+            if (cmp == 0) {
+                cmp = (to - from) - itemId.length();
+            }
+            if (cmp > 0) {
+                low = mid + 1;
+            } else if (cmp < 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public int size() {
+        return itemIds.length;
+    }
+
+    public int numCategories() {
+        return categoryNames.length;
+    }
+
+    public String getItemId(int index) {
+        return itemIds[index];
+    }
+
+    public float getPrice(int index) {
+        return prices[index];
+    }
+
+    public MenuItem getItem(int index) {
+        return new MenuItem(itemIds[index], categoryNames[categoryIdx[index]], descriptions[index], prices[index]);
+    }
+}
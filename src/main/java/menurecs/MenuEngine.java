@@ -3,47 +3,116 @@ package menurecs;
 import static spark.Spark.*;
 
 import com.google.gson.Gson;
-import ilog.concert.*;
-import ilog.cplex.IloCplex;
-import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Response;
 
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 public class MenuEngine {
-
-    private static Map<String, MenuItem> menuItems;
-    private static Map<String, List<String>> recommendations;
+    private static final Logger LOG = LoggerFactory.getLogger(MenuEngine.class);
+
+    private static DataReloader dataReloader;
+    private static Solver solver;
+    private static int defaultDeadlineMs;
+    private static Scorer scorer;
+    private static DtScoreCache dtScoreCache;
+    private static BatchHandler batchHandler;
+    private static SessionHandler sessionHandler;
+    private static AdmissionController admissionController;
+    private static ResultCache resultCache;
+    private static AdminGuard adminGuard;
+    private static Availability availability;
 
     public static void main(String[] args) {
-        // load data
-        String dataDir = "data";
-        DataFileLoader loader = new DataFileLoader(dataDir);
+        // load data, from -Dmenurecs.dataDir if given
+        String dataDir = System.getProperty("menurecs.dataDir", "data");
 
+        // DT scores: the R service (see RScoringClient.fromSystemProperties), or with -Dmenurecs.scorer=embedded the
+        // exported score table in the data directory
         try {
-            menuItems = loader.readMenu();
-            System.out.println("Read menu items: " + menuItems.size());
+            scorer = Scorer.fromSystemProperties(dataDir);
+        } catch (IOException e) {
+            System.err.println("Error: could not read the DT score table.");
+            e.printStackTrace();
+            return;
+        } catch (IllegalArgumentException e) {
+            // e.g. an unknown -Dmenurecs.scorer
+            System.err.println("Error: " + e.getMessage());
+            return;
+        }
+        // precomputed answers are only used if they were computed from these DT scores
+        DataFileLoader loader = new DataFileLoader(dataDir, scorer.fingerprint());
+        // "precompute": run the offline job for empty-basket requests instead of serving, see Precomputer
+        boolean precompute = args.length > 0 && args[0].equals("precompute");
 
-            recommendations = loader.readRecommendation();
-            System.out.println("Read recommendations: " + recommendations.size());
+        try {
+            dataReloader = new DataReloader(loader);
+            // reload when the data files change, unless -Dmenurecs.watchData=false (or precomputing)
+            if (!precompute && Boolean.parseBoolean(System.getProperty("menurecs.watchData", "true"))) {
+                dataReloader.startWatching();
+            }
         } catch (IOException e) {
             System.err.println("Error: could not read one or more files.");
             e.printStackTrace();
             return;
         }
 
+        // optimization backend: "cplex" (default), "java", or "portfolio" to race several (see PortfolioSolver), e.g.
+        // -Dmenurecs.solver=java; a greedy answer backs it up when it fails or runs past the request's deadline,
+        // -Dmenurecs.deadlineMs unless the request gives deadlinems
+        solver = new AnytimeSolver(Solver.forName(System.getProperty("menurecs.solver", "cplex")), new GreedySolver());
+        defaultDeadlineMs = Integer.getInteger("menurecs.deadlineMs", 1000);
+
+        dtScoreCache = DtScoreCache.fromSystemProperties(scorer);
+        // items each outlet doesn't serve (unavailable.csv) or has sold out are left out of its candidates
+        availability = new Availability(dataReloader.current());
+
+        if (precompute) {
+            try {
+                if (!Precomputer.fromSystemProperties(dataDir, dtScoreCache).run(dataReloader.current())) {
+                    System.exit(1);
+                }
+            } catch (IOException | InterruptedException e) {
+                System.err.println("Error: could not precompute recommendations.");
+                e.printStackTrace();
+                System.exit(1);
+            }
+            System.exit(0);
+        }
+
+        batchHandler = BatchHandler.fromSystemProperties();
+        // single, batch and session recommendations solve on a bounded pool, shedding load beyond it
+        admissionController = AdmissionController.fromSystemProperties();
+        resultCache = ResultCache.fromSystemProperties();
+        adminGuard = AdminGuard.fromSystemProperties();
+        sessionHandler = SessionHandler.fromSystemProperties(dtScoreCache, solver, admissionController,
+                availability);
+        sessionHandler.startEvicting();
+
+        // the /status numbers, also on /metrics for scraping
+        Metrics.stats("menurecs_snapshot", "Current data snapshot", dataReloader::getStats);
+        Metrics.stats("menurecs_scorer", "DT scorer calls, and the R client's connection pool", scorer::getStats,
+                "requests", "failures", "rejected", "lookups", "unknownContexts");
+        Metrics.stats("menurecs_dt_score_cache", "DT score cache", dtScoreCache::getStats,
+                "hits", "misses", "loadFailures", "evictions");
+        Metrics.stats("menurecs_sessions", "Ordering sessions", sessionHandler::getStats,
+                "created", "expired", "evicted");
+        Metrics.stats("menurecs_admission", "Solve pool and queue", admissionController::getStats,
+                "admitted", "rejectedQueueFull", "rejectedTimeout");
+        Metrics.stats("menurecs_result_cache", "Cache of final /recommend answers", resultCache::getStats,
+                "hits", "misses", "evictions", "invalidations");
+        Metrics.stats("menurecs_availability", "Unavailable and sold-out items", availability::getStats,
+                "soldOutUpdates");
+
         // config
-        port(8080);
+        port(Integer.getInteger("menurecs.port", 8080));
 
-        // CORS support.
+        // CORS support, except for the admin routes (see AdminGuard).
         // source: https://gist.github.com/saeidzebardast/e375b7d17be3e0f4dddf
         // see also: https://sparktutorials.github.io/2016/05/01/cors.html
         options("/*", (request, response) -> {
@@ -60,352 +129,262 @@ public class MenuEngine {
             return "OK";
         });
 
-        before((request, response) -> response.header("Access-Control-Allow-Origin", "*"));
+        // reload and sold-out changes need -Dmenurecs.admin.token
+        before(adminGuard::check);
+        before((request, response) -> {
+            if (!AdminGuard.isAdminRoute(request)) {
+                response.header("Access-Control-Allow-Origin", "*");
+            }
+        });
 
         // provide routes and logic
-        get("/menu", (request, response) -> {
-            Map<String, Map<String, String>> menu = new HashMap<>();
-            for (Map.Entry<String, MenuItem> entry : menuItems.entrySet()) {
-                MenuItem item = entry.getValue();
-                Map<String, String> menuDetails = new HashMap<>();
-
-                menuDetails.put("itemid", item.getId());
-                menuDetails.put("price", "" + item.getPrice());
-                menuDetails.put("description", item.getDescription());
-                menuDetails.put("category", item.getCategory());
-
-                menu.put(item.getId(), menuDetails);
+        get("/menu", (request, response) -> dataReloader.current().menuResponse.serve(request, response));
+        get("/status", (request, response) -> {
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("snapshot", dataReloader.getStats());
+            status.put("scorer", scorer.getStats());
+            status.put("dtScoreCache", dtScoreCache.getStats());
+            status.put("sessions", sessionHandler.getStats());
+            status.put("admission", admissionController.getStats());
+            status.put("resultCache", resultCache.getStats());
+            status.put("availability", availability.getStats());
+            response.type("application/json");
+            return new Gson().toJson(status);
+        });
+        get("/metrics", (request, response) -> {
+            response.type("text/plain; version=0.0.4");
+            return Metrics.render();
+        });
+        post("/admin/reload", (request, response) -> {
+            try {
+                dataReloader.reload();
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                response.status(500);
             }
-            return new Gson().toJson(menu);
+            response.type("application/json");
+            return new Gson().toJson(dataReloader.getStats());
         });
         get("/recommend", (request, response) -> {
-            // check for required params
-            String[] requiredParams = {"customerid", "outputlength", "numpax", "targetspend", "itemids", "itemqty",
-                    "hour", "school_holiday", "public_holiday", "weekday", "outlet", "day"};
-            List<String> missingParams = new ArrayList<>();
-            for (String param : requiredParams) {
-                if (request.queryParams(param) == null) {
-                    missingParams.add(param);
+            long start = System.nanoTime();
+            DataSnapshot snapshot = dataReloader.current();
+            try {
+                RecommendRequest recommendRequest = RecommendRequest.parse(request::queryParams, snapshot.catalog);
+                Metrics.PARSE.recordSince(start);
+                // the budget counts from the request's arrival: the DT wait and the queue come out of it
+                long deadline = deadlineFor(start, recommendRequest.deadlineMs);
+
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Received request: customer {}, output length {}, {} pax, target spend per pax {}",
+                            recommendRequest.customerId, recommendRequest.outputLength, recommendRequest.numPax,
+                            recommendRequest.targetSpend);
                 }
-            }
-            if (!missingParams.isEmpty()) {
-                response.status(400);
-                return "Missing parameter(s): " + String.join(", ", missingParams);
-            }
 
-            // check for integer params
-            String[] integerParams = {"customerid", "outputlength", "numpax"};
-            List<String> notIntegerParams = new ArrayList<>();
-            for (String param : integerParams) {
-                try {
-                    Integer.parseInt(request.queryParams(param));
-                } catch (NumberFormatException e) {
-                    notIntegerParams.add(param);
-                }
-            }
-            if (!notIntegerParams.isEmpty()) {
-                response.status(400);
-                return "Non-integer parameter(s): " + String.join(", ", notIntegerParams);
-            }
+                Recommendation recommendation = recommend(snapshot, recommendRequest, deadline);
+                response.header(Recommendation.SOURCE_HEADER, recommendation.source);
 
-            // check for double params
-            String[] doubleParams = {"customerid", "outputlength", "numpax"};
-            List<String> notDoubleParams = new ArrayList<>();
-            for (String param : doubleParams) {
-                try {
-                    Double.parseDouble(request.queryParams(param));
-                } catch (NumberFormatException e) {
-                    notDoubleParams.add(param);
-                }
+                long serializeStart = System.nanoTime();
+                ResultWriter.forCurrentThread().writeItemIds(recommendation.itemIds).send(response);
+                Metrics.SERIALIZE.recordSince(serializeStart);
+                return "";
+            } catch (InvalidRequestException e) {
+                Metrics.BAD_REQUESTS.increment();
+                response.status(400);
+                return e.getMessage();
+            } catch (OverloadedException e) {
+                return overloaded(response, e);
+            } catch (Exception e) {
+                LOG.warn("Could not compute recommendation", e);
+                Metrics.INTERNAL_ERRORS.increment();
+                response.status(400);
+                return "Some exception occurred: " + e.getClass() + ": " + e.getMessage();
+            } finally {
+                Metrics.RECOMMEND_REQUEST.recordSince(start);
             }
-            if (!notDoubleParams.isEmpty()) {
+        });
+        post("/recommend/batch", (request, response) ->
+                batchHandler.handle(dataReloader.current(), request, response));
+        post("/sessions", (request, response) -> sessionHandler.create(dataReloader.current(), request, response));
+        post("/sessions/:id/items", sessionHandler::addItem);
+        delete("/sessions/:id/items/:itemid", sessionHandler::removeItem);
+        get("/sessions/:id/recommend", (request, response) ->
+                sessionHandler.recommend(dataReloader.current(), request, response));
+        delete("/sessions/:id", sessionHandler::end);
+        get("/outlets/:outlet/soldout", (request, response) -> soldOut(request.params(":outlet"), response));
+        put("/outlets/:outlet/soldout/:itemid", (request, response) -> {
+            try {
+                availability.setSoldOut(dataReloader.current(), request.params(":outlet"), request.params(":itemid"),
+                        true);
+            } catch (IllegalArgumentException e) {
                 response.status(400);
-                return "Non-double parameter(s): " + String.join(", ", notDoubleParams);
+                return e.getMessage();
             }
-
-            // all parameters are validated somewhat
+            return soldOut(request.params(":outlet"), response);
+        });
+        delete("/outlets/:outlet/soldout/:itemid", (request, response) -> {
             try {
-                String customerId = request.queryParams("customerid");
-                int outputLength = Integer.parseInt(request.queryParams("outputlength"));
-                int numPax = Integer.parseInt(request.queryParams("numpax"));
-                double targetSpend = Double.parseDouble(request.queryParams("targetspend"));
-
-                String hour = request.queryParams("hour");
-                String schoolHoliday = request.queryParams("school_holiday");
-                String publicHoliday = request.queryParams("public_holiday");
-                String weekday = request.queryParams("weekday");
-                String outlet = request.queryParams("outlet");
-                String day = request.queryParams("day");
-
-                Map<String, Integer> currentOrder = new HashMap<>();
-                String[] itemIdsStrings = request.queryParams("itemids").split(",");
-                String[] itemQtyStrings = request.queryParams("itemqty").split(",");
-                if (itemIdsStrings.length != itemQtyStrings.length) {
-                    throw new Exception("Differing number of item ids and qty");
-                }
-                if (itemIdsStrings.length != 1 || !itemIdsStrings[0].equals("")) {
-                    // only parse if itemIdsString is not [""] due to empty param
-                    for (int i = 0; i < itemIdsStrings.length; i++) {
-                        int itemQty = Integer.parseInt(itemQtyStrings[i]);
-                        currentOrder.put(itemIdsStrings[i], itemQty);
-                    }
-                }
-
-                System.out.println("=== RECEIVED REQUEST");
-                System.out.println("Customer ID: " + customerId);
-                System.out.println("Output length: " + outputLength);
-                System.out.println("Num of pax: " + numPax);
-                System.out.println("Target spend per pax: " + targetSpend);
-
-                List<String> results = computeRecommendation(customerId, outputLength, numPax, targetSpend, currentOrder,
-                        hour, schoolHoliday, publicHoliday, weekday, outlet, day);
-
-                return new Gson().toJson(results);
-            } catch (Exception e) {
-                e.printStackTrace();
+                availability.setSoldOut(dataReloader.current(), request.params(":outlet"), request.params(":itemid"),
+                        false);
+            } catch (IllegalArgumentException e) {
                 response.status(400);
-                return "Some exception occurred: " + e.getClass() + ": " + e.getMessage();
+                return e.getMessage();
             }
+            return soldOut(request.params(":outlet"), response);
+        });
+        delete("/outlets/:outlet/soldout", (request, response) -> {
+            availability.clearSoldOut(dataReloader.current(), request.params(":outlet"));
+            return soldOut(request.params(":outlet"), response);
         });
     }
 
-    public static List<String> computeRecommendation(String customerId, int outputLength, int numPax, double spendPerPax,
-            Map<String, Integer> currents, String hour, String schoolHoliday, String publicHoliday, String weekday,
-            String outlet, String day) {
-        // process data: only get the current customer (from collaborative filtering)
-        boolean hasCF = true;
-        List<String> customerRecommendations = recommendations.get(customerId);
-        if (customerRecommendations == null) {
-            hasCF = false;
-            customerRecommendations = new ArrayList<>();
-            for (Map.Entry<String, MenuItem> entry : menuItems.entrySet()) {
-                customerRecommendations.add(entry.getKey());
-            }
-        }
-        System.out.println("Original number of CF recommendations: " + customerRecommendations.size());
-
-        // process data: currently ordered items => add to current total, remove from recommendation candidates
-        double curTotalPrice = 0.0;
-        for (Map.Entry<String, Integer> current : currents.entrySet()) {
-            MenuItem item = menuItems.get(current.getKey());
-            int qty = current.getValue();
-            System.out.println("Adding current item " + item.getDescription() + " with price " + item.getPrice() + " and qty " + qty);
-
-            // add item to current total price
-            curTotalPrice += item.getPrice() * qty;
+    private static Object soldOut(String outlet, Response response) {
+        response.type("application/json");
+        return new Gson().toJson(new ArrayList<>(availability.soldOut(outlet)));
+    }
 
-            // remove from consideration in the recommendations list
-            customerRecommendations.remove(current.getKey());
+    /**
+     * The answer to one GET /recommend or batch request: precomputed, cached, or solved on the admission controller's
+     * pool (OverloadedException when it is full).
+     */
+    static Recommendation recommend(DataSnapshot snapshot, RecommendRequest request, long deadline) throws Exception {
+        // the start of a visit is usually answered by the offline job (see Precomputer); otherwise an exact repeat of
+        // an earlier request gets the same answer without the R call or the solve
+        Recommendation recommendation = precomputed(snapshot, request);
+        if (recommendation != null) {
+            return recommendation;
         }
-        System.out.println("After removing currently ordered items: " + customerRecommendations.size());
-
-        // process data: (predictive filtering)
-        List<DTResult> dtResults = new ArrayList<>();
-        Map<String, Integer> dtRank = new HashMap<>();
-        CloseableHttpClient httpclient = HttpClients.createDefault();
-        try {
-            URI uri = new URIBuilder()
-                    .setScheme("http")
-                    .setHost("localhost")
-                    .setPort(8000)
-                    .setPath("/json")
-                    .setParameter("hour", hour)
-                    .setParameter("school_holiday", schoolHoliday)
-                    .setParameter("public_holiday", publicHoliday)
-                    .setParameter("weekday", weekday)
-                    .setParameter("outlet", outlet)
-                    .setParameter("day", day)
-                    .build();
-            HttpGet httpget = new HttpGet(uri);
-            CloseableHttpResponse response = httpclient.execute(httpget);
-            try {
-                // extract json response and make it into key-value pairs
-                String jsonResponse = EntityUtils.toString(response.getEntity());
-                System.out.println("R server response: " + jsonResponse);
-                HashMap<String, Double>[] jsonArray = new Gson().fromJson(jsonResponse, HashMap[].class);
-                HashMap<String, Double> dtMap = jsonArray[0];
-                for (Map.Entry<String, Double> entry : dtMap.entrySet()) {
-                    DTResult result = new DTResult();
-                    result.itemId = entry.getKey().trim();
-                    result.score = entry.getValue();
-                    if (!result.itemId.equals("TAKEAWAY")) {
-                        dtResults.add(result);
-                    }
-                }
-                // score by score descending
-                dtResults.sort(new DTComparator());
-                System.out.println("Original number of DT recommendations: " + dtResults.size());
-                // assign the rank
-                int i = dtResults.size();
-                for (DTResult result : dtResults) {
-                    dtRank.put(result.itemId, i);
-                    i--;
-                }
-            } finally {
-                response.close();
-            }
-        } catch (URISyntaxException e) {
-            e.printStackTrace();
-            throw new RuntimeException("Invalid parameters for R service", e);
-        } catch (ClientProtocolException e) {
-            e.printStackTrace();
-            throw new RuntimeException("Issue encountered while connecting to R service", e);
-        } catch (IOException e) {
-            e.printStackTrace();
-            throw new RuntimeException("Issue encountered while connecting to R service", e);
+        String cacheKey = ResultCache.key(snapshot, request,
+                availability.unavailable(snapshot, request.context.outlet));
+        recommendation = resultCache.get(snapshot.version, cacheKey);
+        if (recommendation == null) {
+            // process data: (predictive filtering) wait for the DT scores here, so a solve thread only does the CPU
+            // work and never sits on the R call
+            CompletableFuture<DtRankTable> dtRank = dtScoreCache.getAsync(request.context);
+            awaitDtRanks(dtRank);
+            recommendation = admissionController.run(request.context.outlet,
+                    () -> computeRecommendation(snapshot, request, dtRank, deadline));
+            resultCache.put(snapshot.version, cacheKey, recommendation);
         }
+        return recommendation;
+    }
 
+    public static Recommendation computeRecommendation(DataSnapshot snapshot, RecommendRequest request) {
+        // process data: (predictive filtering) start the DT score lookup first, it overlaps with candidate preparation
+        return computeRecommendation(snapshot, request, dtScoreCache.getAsync(request.context),
+                deadlineFor(System.nanoTime(), request.deadlineMs));
+    }
 
-        // process data: prices and categories, compute the scores
-        int numRecItems = customerRecommendations.size();
-        double[] itemPrices = new double[numRecItems];
-        int[] itemScores = new int[numRecItems];
-        int[] itemCategories = new int[numRecItems];
-        List<String> categories = new ArrayList<>();
-        for (int i = 0; i < numRecItems; i++) {
-            MenuItem item = menuItems.get(customerRecommendations.get(i));
-            itemScores[i] = dtRank.get(item.getId());
-            if (hasCF) {
-                itemScores[i] += numRecItems - i; // rank
-            }
-            itemPrices[i] = item.getPrice();
-            if (hasCF) {
-                System.out.println("Adding recommended item " + item.getDescription() + " with price " + item.getPrice()
-                        + " and score " + dtRank.get(item.getId()) + " + " + (numRecItems - 1) + " = " + itemScores[i]);
-            } else {
-                System.out.println("Adding recommended item " + item.getDescription() + " with price " + item.getPrice()
-                        + " and score " + itemScores[i]);
+    /**
+     * computeRecommendation with the DT scores already being looked up, so a batch can share one lookup across
+     * requests with the same context, and the solver deadline worked out when the request arrived.
+     */
+    static Recommendation computeRecommendation(DataSnapshot snapshot, RecommendRequest request,
+            CompletableFuture<DtRankTable> dtRankFuture, long deadline) {
+        MenuCatalog catalog = snapshot.catalog;
+        int[] basketItems = request.basketItems;
+        int[] basketQty = request.basketQty;
+        int numBasketItems = request.numBasketItems;
+
+        // process data: CF ranking for the current customer, less the currently ordered items
+        long stageStart = System.nanoTime();
+        Candidates candidates = Candidates.forCurrentThread();
+        short[] ranking = snapshot.rankings.get(request.customerId);
+        candidates.prepare(catalog, ranking, availability.unavailable(snapshot, request.context.outlet), basketItems,
+                basketQty, numBasketItems);
+        stageStart = Metrics.CF_LOOKUP.recordSince(stageStart);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Original number of CF recommendations: {}", ranking != null ? ranking.length : catalog.size());
+            for (int i = 0; i < numBasketItems; i++) {
+                int item = basketItems[i];
+                LOG.debug("Adding current item {} with price {} and qty {}", catalog.descriptions[item],
+                        catalog.prices[item], basketQty[i]);
             }
+            LOG.debug("After removing currently ordered items: {}", candidates.size);
+        }
 
+        DtRankTable dtRank;
+        try {
+            dtRank = awaitDtRanks(dtRankFuture);
+        } finally {
+            // only the part of the R call that candidate preparation did not hide
+            stageStart = Metrics.DT_WAIT.recordSince(stageStart);
+        }
 
-            int categoryIndex = categories.indexOf(item.getCategory());
-            if (categoryIndex == -1) {
-                categoryIndex = categories.size();
-                categories.add(item.getCategory());
+        // process data: compute the scores
+        candidates.score(catalog, dtRank.ranksFor(catalog));
+        if (LOG.isDebugEnabled()) {
+            for (int i = 0; i < candidates.size; i++) {
+                int item = candidates.items[i];
+                LOG.debug("Adding recommended item {} with price {} and score {}", catalog.descriptions[item],
+                        catalog.prices[item], candidates.scores[i]);
             }
-
-            itemCategories[i] = categoryIndex;
         }
+        RecommendationProblem problem = candidates.toProblem(catalog, request.outputLength,
+                request.numPax * request.targetSpend);
+        stageStart = Metrics.MODEL_BUILD.recordSince(stageStart);
+
+        // solve, then map the picked indices back to item ids
+        SolverResult solution = solver.solve(problem, null, deadline);
+        Metrics.SOLVE.recordSince(stageStart);
 
         // result list
         List<String> results = new ArrayList<>();
-
-        // init model
-        try {
-            // create active model.
-            // IloCplex requires linking to the native CPLEX shared library, as defined in the JVM's java.library.path
-            // system property, as it represents an instance of CPLEX itself. the property must be set to dir containing
-            // libcplexXXXX.jnilib (XXXX version matching the cplex.jar file), etc.
-            // e.g. -Djava.library.path=/Applications/IBM/ILOG/CPLEX_Studio1261/cplex/bin/x86-64_osx
-            IloCplex cplex = new IloCplex();
-
-            // static configuration
-            double largeM = 1000.0;
-
-            // DECISION VARIABLES
-            // x and y dvars are boolean
-            // z dvars are doubles, 0 <= z <= 1000.0
-            IloIntVar[] xs = cplex.boolVarArray(numRecItems);
-            IloIntVar[] ys = cplex.boolVarArray(itemCategories.length);
-            IloNumVar[] zs = cplex.numVarArray(numRecItems, 0.0, 1000.0);
-
-
-            // OBJECTIVE FUNCTION
-            // available operators:
-            // abs, constant, diff [subtract], max, min, negative, prod, scalProd, square, sum
-
-            // maximize sum(prices * x) - (100 * sum(y) + 300 * sum(z))
-            IloLinearIntExpr totalScores = cplex.scalProd(itemScores, xs);
-            IloNumExpr penalty = cplex.sum(cplex.prod(300, cplex.sum(ys)), cplex.prod(3000, cplex.sum(zs)));
-            IloNumExpr obj = cplex.diff(totalScores, penalty);
-            cplex.addMaximize(obj);
-
-
-            // CONSTRAINTS
-            // available operators:
-            // addEq, addGe, addLe, and, not, or, eq, ge, le, ifThen
-
-            // number of things to output
-            // outputLength == sum(xs)
-            cplex.addEq(outputLength, cplex.sum(xs), "outputLength");
-
-            // make z reflect how much over budget each recommended item is
-            // itemPrice_i * x_i + currentTotalPrices <= (1 + Z_i) * (budget), for all i
-            double budget = numPax * spendPerPax;
-            double remainingBudget = budget - curTotalPrice;
-            System.out.println("Budget: " + budget);
-            System.out.println("Remaining budget: " + remainingBudget);
-            for (int i = 0; i < numRecItems; i++) {
-                IloNumExpr totalPrice = cplex.sum(cplex.prod(itemPrices[i], xs[i]), curTotalPrice);
-                cplex.addLe(totalPrice, cplex.prod(cplex.sum(1, zs[i]), budget), "budget");
-            }
-
-            // make the category's y = 1 if exceeding 1 item per category
-            IloLinearIntExpr[] categoryConstraints = new IloLinearIntExpr[categories.size()];
-            // init for all categories
-            for (int i = 0; i < categoryConstraints.length; i++) {
-                categoryConstraints[i] = cplex.linearIntExpr();
-            }
-            // attach each item to its category
-            for (int i = 0; i < numRecItems; i++) {
-                categoryConstraints[itemCategories[i]].addTerm(1, xs[i]);
-            }
-            // x <= 1 + My
-            for (int i = 0; i < categoryConstraints.length; i++) {
-                cplex.addLe(categoryConstraints[i], cplex.sum(1, cplex.prod(largeM, ys[i])), "category"
-                        + categories.get(i));
-            }
-
-            // write this lp file out for debugging with interactive cplex optimizer
-//            cplex.exportModel("test.lp");
-
-            // provide visual separation from cplex engine's output
-            System.out.println("=== STARTING CPLEX");
-
-            // solve
-            if (cplex.solve()) {
-                System.out.println("=== CPLEX STATUS");
-                System.out.println(cplex.getStatus());
-                System.out.println("=== OBJECTIVE VALUE");
-                System.out.println(cplex.getObjValue());
-                System.out.println("=== SOLUTION VALUES");
-                for (int i = 0; i < numRecItems; i++) {
-                    // cannot test == 1 here because cplex sometimes returns 0.99999999999908 when bool var is true
-                    if (cplex.getValue(xs[i]) != 0) {
-                        MenuItem item = menuItems.get(customerRecommendations.get(i));
-                        System.out.println(item.getId() + "," + item.getDescription() + "," + item.getCategory()
-                                + "," + item.getPrice());
-                        results.add(item.getId());
-                    }
+        if (solution.hasSolution()) {
+            for (int i : solution.getSelected()) {
+                int item = candidates.items[i];
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Solution value: {},{},{},{}", catalog.itemIds[item], catalog.descriptions[item],
+                            catalog.categoryNames[catalog.categoryIdx[item]], catalog.prices[item]);
                 }
-            } else {
-                System.out.println("Uh oh, no solution found.");
-                System.out.println("=== CPLEX STATUS");
-                System.out.println(cplex.getStatus());
+                results.add(catalog.itemIds[item]);
             }
+        } else {
+            Metrics.NO_SOLUTION.increment();
+        }
 
-            // cleanup
-            cplex.end();
-        } catch (IloException e) {
-            System.err.println("Error: encountered some problem with CPLEX.");
-            e.printStackTrace();
-        } catch (UnsatisfiedLinkError e) {
-            System.err.println("Error: could not find CPLEX shared library.");
-            e.printStackTrace();
+        return new Recommendation(results, solution.source, solution.optimal);
+    }
+
+    /**
+     * The offline job's answer to the request (see Precomputer), unless one of its items has since sold out.
+     */
+    static Recommendation precomputed(DataSnapshot snapshot, RecommendRequest request) {
+        Recommendation recommendation = snapshot.precomputed(request);
+        if (recommendation == null
+                || !availability.allAvailable(snapshot, request.context.outlet, recommendation.itemIds)) {
+            return null;
         }
+        Metrics.PRECOMPUTED_HITS.increment();
+        return recommendation;
+    }
 
-        return results;
+    static Object overloaded(Response response, OverloadedException e) {
+        response.status(503);
+        response.header("Retry-After", Integer.toString(admissionController.getRetryAfterSeconds()));
+        return e.getMessage();
     }
-}
 
-class DTResult {
-    String itemId;
-    double score;
-}
+    /**
+     * Deadline for a request that arrived at startNanos (System.nanoTime()): its own deadlinems after that, or the
+     * server default. Worked out once per request and passed along, so queueing and the DT wait count against it.
+     */
+    static long deadlineFor(long startNanos, int requestDeadlineMs) {
+        long millis = requestDeadlineMs > 0 ? requestDeadlineMs : defaultDeadlineMs;
+        return millis > 0 ? startNanos + TimeUnit.MILLISECONDS.toNanos(millis) : Solver.NO_DEADLINE;
+    }
 
-class DTComparator implements Comparator<DTResult> {
-    @Override
-    public int compare(DTResult o1, DTResult o2) {
-        return Double.compare(o2.score, o1.score);
+    /**
+     * Wait for a DT score lookup; bad parameters come back as IllegalArgumentException, anything else as a failure to
+     * reach the R service.
+     */
+    static DtRankTable awaitDtRanks(CompletableFuture<DtRankTable> dtRankFuture) {
+        try {
+            return dtRankFuture.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) e.getCause();
+            }
+            throw new RuntimeException("Issue encountered while connecting to R service", e.getCause());
+        }
     }
 }
@@ -0,0 +1,157 @@
+package menurecs;
+
+import com.google.gson.Gson;
+import spark.Request;
+import spark.Response;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The /menu response body for one set of menu items, serialized and gzipped once up front. Served with an ETag so
+ * polling clients get a 304 until the menu changes.
+ */
+public class MenuResponse {
+    private final byte[] body;
+    private final byte[] gzippedBody;
+    private final String etag;
+
+    public MenuResponse(MenuCatalog catalog) {
+        body = new Gson().toJson(toJsonMap(catalog)).getBytes(StandardCharsets.UTF_8);
+        gzippedBody = gzip(body);
+        etag = "\"" + sha1Hex(body) + "\"";
+    }
+
+    /**
+     * The menu as itemid => {itemid, price, description, category}, all strings.
+     */
+    static Map<String, Map<String, String>> toJsonMap(MenuCatalog catalog) {
+        Map<String, Map<String, String>> menu = new HashMap<>();
+        for (int i = 0; i < catalog.size(); i++) {
+            MenuItem item = catalog.getItem(i);
+            Map<String, String> menuDetails = new HashMap<>();
+
+            menuDetails.put("itemid", item.getId());
+            menuDetails.put("price", "" + item.getPrice());
+            menuDetails.put("description", item.getDescription());
+            menuDetails.put("category", item.getCategory());
+
+            menu.put(item.getId(), menuDetails);
+        }
+        return menu;
+    }
+
+    public Object serve(Request request, Response response) throws IOException {
+        response.type("application/json");
+        response.header("ETag", etag);
+        response.header("Vary", "Accept-Encoding");
+        response.header("Cache-Control", "no-cache");
+
+        if (matchesEtag(request.headers("If-None-Match"))) {
+            response.status(304);
+            return "";
+        }
+
+        if (!acceptsGzip(request.headers("Accept-Encoding"))) {
+            return body;
+        }
+        // write the pre-gzipped bytes ourselves: returning them with Content-Encoding set would make Spark gzip them
+        // again. Spark leaves a committed response alone.
+        HttpServletResponse raw = response.raw();
+        raw.setHeader("Content-Encoding", "gzip");
+        raw.setContentLength(gzippedBody.length);
+        OutputStream out = raw.getOutputStream();
+        out.write(gzippedBody);
+        out.flush();
+        return "";
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public byte[] getGzippedBody() {
+        return gzippedBody;
+    }
+
+    boolean matchesEtag(String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            // weak comparison, a proxy may have weakened our tag
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                for (int i = 1; i < parts.length; i++) {
+                    String param = parts[i].replace(" ", "");
+                    if (param.startsWith("q=") && !acceptable(param.substring(2))) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // a q value other than 0; a malformed one counts as not acceptable, so the client gets the uncompressed body
+    private static boolean acceptable(String q) {
+        try {
+            return Double.parseDouble(q) != 0.0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(bytes);
+        } catch (IOException e) {
+            // in-memory streams don't throw
+            throw new IllegalStateException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static String sha1Hex(byte[] bytes) {
+        try {
+            StringBuilder hex = new StringBuilder(40);
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(bytes)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every JRE ships SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+}
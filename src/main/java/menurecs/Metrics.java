@@ -0,0 +1,244 @@
+package menurecs;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide latency histograms, counters and gauges, rendered in the Prometheus text format on /metrics.
+ * Recording is a bucket search plus a few LongAdder increments: cheap enough to leave on for every request.
+ */
+public final class Metrics {
+    // histogram bucket upper bounds, in seconds
+    private static final double[] BUCKETS = {0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1.0,
+            2.5, 5.0, 10.0};
+
+    private static final Map<String, Family> FAMILIES = new LinkedHashMap<>();
+
+    // per-stage latency of computeRecommendation and the /recommend route
+    public static final Histogram PARSE = stage("parse");
+    public static final Histogram CF_LOOKUP = stage("cf_lookup");
+    public static final Histogram R_CALL = stage("r_call");
+    public static final Histogram DT_WAIT = stage("dt_wait");
+    public static final Histogram MODEL_BUILD = stage("model_build");
+    public static final Histogram SOLVE = stage("solve");
+    public static final Histogram SERIALIZE = stage("serialize");
+
+    public static final Histogram RECOMMEND_REQUEST = histogram("menurecs_request_seconds",
+            "End-to-end request handling time", "endpoint=\"recommend\"");
+
+    public static final Counter NO_SOLUTION = counter("menurecs_no_solution_total",
+            "Recommendations where the solver found no solution", "");
+    public static final Counter PRECOMPUTED_HITS = counter("menurecs_precomputed_hits_total",
+            "Recommendations answered from the offline job's file", "");
+    public static final Counter BAD_REQUESTS = counter("menurecs_errors_total",
+            "Requests that failed", "type=\"bad_request\"");
+    public static final Counter INTERNAL_ERRORS = counter("menurecs_errors_total",
+            "Requests that failed", "type=\"internal\"");
+
+    private Metrics() {
+    }
+
+    public static final class Histogram {
+        private final LongAdder[] buckets = new LongAdder[BUCKETS.length + 1];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+
+        Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void record(long nanos) {
+            double seconds = nanos / 1e9;
+            int bucket = 0;
+            while (bucket < BUCKETS.length && seconds > BUCKETS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+            count.increment();
+            sumNanos.add(nanos);
+        }
+
+        /**
+         * Record the time since startNanos (from System.nanoTime) and return the current time, for chaining stages.
+         */
+        public long recordSince(long startNanos) {
+            long now = System.nanoTime();
+            record(now - startNanos);
+            return now;
+        }
+
+        void render(StringBuilder out, String name, String labels) {
+            String separator = labels.isEmpty() ? "" : ",";
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                cumulative += buckets[i].sum();
+                out.append(name).append("_bucket{").append(labels).append(separator).append("le=\"")
+                        .append(BUCKETS[i]).append("\"} ").append(cumulative).append('\n');
+            }
+            cumulative += buckets[BUCKETS.length].sum();
+            out.append(name).append("_bucket{").append(labels).append(separator).append("le=\"+Inf\"} ")
+                    .append(cumulative).append('\n');
+            out.append(name).append("_sum").append(braces(labels)).append(' ').append(sumNanos.sum() / 1e9)
+                    .append('\n');
+            out.append(name).append("_count").append(braces(labels)).append(' ').append(count.sum()).append('\n');
+        }
+    }
+
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            value.increment();
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    // a getStats() map, less the entries exported as counters
+    private static final class Stats {
+        final Supplier<Map<String, Object>> stats;
+        final Set<String> counters;
+
+        Stats(Supplier<Map<String, Object>> stats, Set<String> counters) {
+            this.stats = stats;
+            this.counters = counters;
+        }
+    }
+
+    // one entry of a getStats() map
+    private static final class Stat {
+        final Supplier<Map<String, Object>> stats;
+        final String key;
+
+        Stat(Supplier<Map<String, Object>> stats, String key) {
+            this.stats = stats;
+            this.key = key;
+        }
+    }
+
+    private static final class Family {
+        final String name;
+        final String help;
+        final String type;
+        final Map<String, Object> series = new LinkedHashMap<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private static Histogram stage(String stage) {
+        return histogram("menurecs_stage_seconds", "Time spent per recommendation stage", "stage=\"" + stage + "\"");
+    }
+
+    public static synchronized Histogram histogram(String name, String help, String labels) {
+        Histogram histogram = new Histogram();
+        family(name, help, "histogram").series.put(labels, histogram);
+        return histogram;
+    }
+
+    public static synchronized Counter counter(String name, String help, String labels) {
+        Counter counter = new Counter();
+        family(name, help, "counter").series.put(labels, counter);
+        return counter;
+    }
+
+    /**
+     * Register a value read at scrape time, e.g. a cache size. Registering the same series again replaces it.
+     */
+    public static synchronized void gauge(String name, String help, String labels, DoubleSupplier value) {
+        family(name, help, "gauge").series.put(labels, value);
+    }
+
+    /**
+     * Expose an existing getStats() map as one gauge family, one series per numeric entry: stat="key". The entries
+     * named in counters are monotonic counts, and each becomes a counter family of its own instead, e.g. "loadFailures"
+     * is name_load_failures_total. A counter missing from the map, e.g. one only some scorers have, is left out.
+     */
+    public static synchronized void stats(String name, String help, Supplier<Map<String, Object>> stats,
+            String... counters) {
+        family(name, help, "gauge").series.put("", new Stats(stats, new HashSet<>(Arrays.asList(counters))));
+        for (String counter : counters) {
+            String counterName = name + "_" + counter.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toLowerCase() + "_total";
+            family(counterName, help + ": " + counter, "counter").series.put("", new Stat(stats, counter));
+        }
+    }
+
+    private static Family family(String name, String help, String type) {
+        Family family = FAMILIES.get(name);
+        if (family == null) {
+            family = new Family(name, help, type);
+            FAMILIES.put(name, family);
+        }
+        return family;
+    }
+
+    public static synchronized String render() {
+        StringBuilder out = new StringBuilder(8192);
+        StringBuilder samples = new StringBuilder(1024);
+        for (Family family : FAMILIES.values()) {
+            samples.setLength(0);
+            for (Map.Entry<String, Object> series : family.series.entrySet()) {
+                Object metric = series.getValue();
+                if (metric instanceof Histogram) {
+                    ((Histogram) metric).render(samples, family.name, series.getKey());
+                } else if (metric instanceof Counter) {
+                    samples.append(family.name).append(braces(series.getKey())).append(' ')
+                            .append(((Counter) metric).get()).append('\n');
+                } else if (metric instanceof DoubleSupplier) {
+                    samples.append(family.name).append(braces(series.getKey())).append(' ')
+                            .append(((DoubleSupplier) metric).getAsDouble()).append('\n');
+                } else if (metric instanceof Stat) {
+                    Stat stat = (Stat) metric;
+                    Number value = numeric(stat.stats.get().get(stat.key));
+                    if (value != null) {
+                        samples.append(family.name).append(' ').append(value.doubleValue()).append('\n');
+                    }
+                } else {
+                    renderStats(samples, family.name, (Stats) metric);
+                }
+            }
+            // a family with nothing to report, e.g. counters the current scorer doesn't keep, is left out
+            if (samples.length() > 0) {
+                out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+                out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+                out.append(samples);
+            }
+        }
+        return out.toString();
+    }
+
+    private static void renderStats(StringBuilder out, String name, Stats stats) {
+        for (Map.Entry<String, Object> stat : stats.stats.get().entrySet()) {
+            Number value = numeric(stat.getValue());
+            if (value != null && !stats.counters.contains(stat.getKey())) {
+                out.append(name).append("{stat=\"").append(stat.getKey()).append("\"} ")
+                        .append(value.doubleValue()).append('\n');
+            }
+        }
+    }
+
+    // booleans as 0 or 1; null for anything else that isn't a number
+    private static Number numeric(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1 : 0;
+        }
+        return value instanceof Number ? (Number) value : null;
+    }
+
+    private static String braces(String labels) {
+        return labels.isEmpty() ? "" : "{" + labels + "}";
+    }
+}
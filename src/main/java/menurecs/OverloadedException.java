@@ -0,0 +1,12 @@
+package menurecs;
+
+/**
+ * Admission control turned a request away; the client should retry after a moment (503 with Retry-After).
+ */
+class OverloadedException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    OverloadedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,139 @@
+package menurecs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Races several strategies on the same problem in parallel and returns the first answer proven optimal, or, if none
+ * is by the deadline, the best one in by then. The losers are cancelled: the Java strategies check for interruption
+ * as they go, CPLEX stops at its time limit. The winner's name is the result's source, and wins are counted per
+ * strategy on /metrics.
+ *
+ * Strategies run on a shared pool, so they get a copy of the problem: the caller's arrays are reused by its next
+ * request, while a cancelled strategy may still be winding down.
+ */
+public class PortfolioSolver implements Solver {
+    private static final Logger LOG = LoggerFactory.getLogger(PortfolioSolver.class);
+
+    private static final Map<String, Metrics.Counter> WINS = new ConcurrentHashMap<>();
+
+    private final Map<String, Solver> strategies;
+    private final ExecutorService workers;
+
+    public PortfolioSolver(Map<String, Solver> strategies, int threads) {
+        if (strategies.isEmpty()) {
+            throw new IllegalArgumentException("A portfolio needs at least one strategy");
+        }
+        this.strategies = strategies;
+        workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "portfolio-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (String name : strategies.keySet()) {
+            wins(name);
+        }
+    }
+
+    /**
+     * Portfolio of the comma-separated -Dmenurecs.portfolio.strategies (default "exact,greedy,local,cplex"; cplex is
+     * left out when its library can't be loaded) on -Dmenurecs.portfolio.threads workers (default: number of cores).
+     */
+    public static PortfolioSolver fromSystemProperties() {
+        Map<String, Solver> strategies = new LinkedHashMap<>();
+        for (String name : System.getProperty("menurecs.portfolio.strategies", "exact,greedy,local,cplex")
+                .split(",")) {
+            name = name.trim();
+            if (name.isEmpty() || strategies.containsKey(name)) {
+                continue;
+            }
+            if (name.equals("cplex") && !CplexSolver.isAvailable()) {
+                LOG.warn("CPLEX is not available, leaving it out of the solver portfolio");
+                continue;
+            }
+            if (name.equals("portfolio")) {
+                throw new IllegalArgumentException("A portfolio can't contain itself");
+            }
+            strategies.put(name, Solver.forName(name));
+        }
+        LOG.info("Solver portfolio: {}", strategies.keySet());
+        return new PortfolioSolver(strategies,
+                Integer.getInteger("menurecs.portfolio.threads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    private static Metrics.Counter wins(String strategy) {
+        return WINS.computeIfAbsent(strategy, name -> Metrics.counter("menurecs_portfolio_wins_total",
+                "Portfolio races won, by strategy", "strategy=\"" + name + "\""));
+    }
+
+    @Override
+    public SolverResult solve(RecommendationProblem problem) {
+        return solve(problem, null, NO_DEADLINE);
+    }
+
+    @Override
+    public SolverResult solve(RecommendationProblem problem, int[] hint) {
+        return solve(problem, hint, NO_DEADLINE);
+    }
+
+    @Override
+    public SolverResult solve(RecommendationProblem problem, int[] hint, long deadlineNanos) {
+        int n = problem.getNumItems();
+        RecommendationProblem copy = new RecommendationProblem(Arrays.copyOf(problem.itemScores, n),
+                Arrays.copyOf(problem.itemPrices, n), Arrays.copyOf(problem.itemCategories, n), n,
+                problem.numCategories, problem.outputLength, problem.budget, problem.curTotalPrice);
+        int[] startFrom = hint != null ? hint.clone() : null;
+
+        CompletionService<SolverResult> race = new ExecutorCompletionService<>(workers);
+        List<Future<SolverResult>> running = new ArrayList<>(strategies.size());
+        for (Solver strategy : strategies.values()) {
+            running.add(race.submit(() -> strategy.solve(copy, startFrom, deadlineNanos)));
+        }
+
+        SolverResult best = SolverResult.NO_SOLUTION;
+        try {
+            for (int finished = 0; finished < running.size(); finished++) {
+                Future<SolverResult> done;
+                if (deadlineNanos == NO_DEADLINE) {
+                    done = race.take();
+                } else {
+                    done = race.poll(Solver.remainingNanos(deadlineNanos), TimeUnit.NANOSECONDS);
+                    if (done == null) {
+                        LOG.debug("Portfolio deadline reached with {} of {} strategies done", finished,
+                                running.size());
+                        break;
+                    }
+                }
+                SolverResult result;
+                try {
+                    result = done.get();
+                } catch (ExecutionException e) {
+                    LOG.warn("Portfolio strategy failed", e.getCause());
+                    continue;
+                }
+                if (result.hasSolution() && (!best.hasSolution() || result.objective > best.objective
+                        || (result.optimal && result.objective >= best.objective))) {
+                    best = result;
+                }
+                if (best.optimal) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Future<SolverResult> future : running) {
+                future.cancel(true);
+            }
+        }
+
+        if (best.hasSolution()) {
+            wins(best.source).increment();
+            LOG.debug("Portfolio won by {}, objective {}, optimal {}", best.source, best.objective, best.optimal);
+        }
+        return best;
+    }
+}
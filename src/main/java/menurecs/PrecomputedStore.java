@@ -0,0 +1,308 @@
+package menurecs;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Empty-basket recommendations read from a memory-mapped precomputed.bin, as written by Precomputer, so the most
+ * common request (the start of a visit) skips the DT lookup and the solve. Each customer has one fixed-size slot per
+ * combination of context, party size and spend per pax, in that nesting order.
+ *
+ * Layout (big-endian):
+ * <pre>
+ * int magic, int version, then fingerprints of the inputs the answers depend on (see Inputs): long menu (the answers
+ * hold catalog indices of that menu), long CF rankings, long DT scores, long not-served items
+ * int outputLength
+ * int numContexts, then each context as six (short length, UTF-8 bytes) in ScoringContext field order
+ * int numPax, then the party sizes as ints
+ * int numSpends, then the spends per pax as doubles
+ * int numCustomers, then numCustomers long record offsets, sorted by customer id (unsigned byte order)
+ * records: short idLength, UTF-8 customer id, then per slot a byte count (NOT_STORED if the job found no optimal
+ * answer) and outputLength shorts of catalog item indices
+ * </pre>
+ */
+public class PrecomputedStore implements Closeable {
+    static final int MAGIC = 0x4d525043; // "MRPC"
+    static final int VERSION = 2;
+    static final int NOT_STORED = 0xff;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final MenuCatalog catalog;
+    private final int outputLength;
+    private final Map<ScoringContext, Integer> contextIndex = new HashMap<>();
+    private final int[] paxBuckets;
+    private final double[] spendBuckets;
+    private final int numCustomers;
+    private final int indexStart;
+
+    private PrecomputedStore(FileChannel channel, MappedByteBuffer buffer, MenuCatalog catalog, Inputs inputs)
+            throws IOException {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.catalog = catalog;
+
+        ByteBuffer header = buffer.duplicate();
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a precomputed recommendations file");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new StaleException("Precomputed recommendations are in an older format (version " + version + ")");
+        }
+        Inputs computedFor = new Inputs(header.getLong(), header.getLong(), header.getLong(), header.getLong());
+        List<String> changed = computedFor.changed(inputs);
+        if (!changed.isEmpty()) {
+            throw new StaleException(changed);
+        }
+        outputLength = header.getInt();
+        int numContexts = header.getInt();
+        for (int i = 0; i < numContexts; i++) {
+            contextIndex.put(new ScoringContext(MappedRankingStore.readString(header),
+                    MappedRankingStore.readString(header), MappedRankingStore.readString(header),
+                    MappedRankingStore.readString(header), MappedRankingStore.readString(header),
+                    MappedRankingStore.readString(header)), i);
+        }
+        paxBuckets = new int[header.getInt()];
+        for (int i = 0; i < paxBuckets.length; i++) {
+            paxBuckets[i] = header.getInt();
+        }
+        spendBuckets = new double[header.getInt()];
+        for (int i = 0; i < spendBuckets.length; i++) {
+            spendBuckets[i] = header.getDouble();
+        }
+        numCustomers = header.getInt();
+        indexStart = header.position();
+    }
+
+    /**
+     * Thrown by open when the file was computed from a different menu, rankings, DT scores or not-served items, or
+     * by an older version of the job.
+     */
+    static class StaleException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        StaleException(String message) {
+            super(message);
+        }
+
+        StaleException(List<String> changed) {
+            this("Precomputed recommendations are out of date: the " + String.join(", ", changed)
+                    + " changed since they were computed");
+        }
+    }
+
+    /**
+     * Fingerprints of everything besides the job's own settings that an answer depends on. A file computed from
+     * different inputs is stale: its answers would no longer be what the online solve gives.
+     */
+    static final class Inputs {
+        final long menu;
+        final long rankings;
+        final long scores;
+        final long notServed;
+
+        Inputs(long menu, long rankings, long scores, long notServed) {
+            this.menu = menu;
+            this.rankings = rankings;
+            this.scores = scores;
+            this.notServed = notServed;
+        }
+
+        /**
+         * The inputs of a snapshot: its menu and not-served items, with the fingerprints of the rankings file it
+         * was loaded from (DataFileLoader.rankingsFingerprint) and of the DT scores (Scorer.fingerprint).
+         */
+        Inputs(MenuCatalog catalog, long rankings, long scores, Map<String, long[]> notServed) {
+            this(menuFingerprint(catalog), rankings, scores, notServedFingerprint(notServed));
+        }
+
+        List<String> changed(Inputs other) {
+            List<String> changed = new ArrayList<>();
+            if (menu != other.menu) {
+                changed.add("menu");
+            }
+            if (rankings != other.rankings) {
+                changed.add("CF rankings");
+            }
+            if (scores != other.scores) {
+                changed.add("DT scores");
+            }
+            if (notServed != other.notServed) {
+                changed.add("not-served items");
+            }
+            return changed;
+        }
+    }
+
+    public static PrecomputedStore open(Path path, MenuCatalog catalog, Inputs inputs) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Precomputed recommendations larger than 2GB: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new PrecomputedStore(channel, buffer, catalog, inputs);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * The precomputed answer to an empty-basket request, or null if the request is not one the job covered.
+     */
+    public Recommendation get(RecommendRequest request) {
+        if (request.numBasketItems != 0 || request.outputLength != outputLength) {
+            return null;
+        }
+        // the request's context is normalized by parse, and the stored ones by Precomputer.readContexts
+        Integer contextSlot = contextIndex.get(request.context);
+        int paxSlot = indexOf(paxBuckets, request.numPax);
+        int spendSlot = indexOf(spendBuckets, request.targetSpend);
+        if (contextSlot == null || paxSlot < 0 || spendSlot < 0) {
+            return null;
+        }
+
+        int record = find(request.customerId.getBytes(StandardCharsets.UTF_8));
+        if (record < 0) {
+            return null;
+        }
+        int slot = (contextSlot * paxBuckets.length + paxSlot) * spendBuckets.length + spendSlot;
+        int position = record + 2 + (buffer.getShort(record) & 0xffff) + slot * slotSize(outputLength);
+        int count = buffer.get(position) & 0xff;
+        if (count == NOT_STORED) {
+            return null;
+        }
+        List<String> itemIds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            itemIds.add(catalog.itemIds[buffer.getShort(position + 1 + i * 2)]);
+        }
+        return new Recommendation(itemIds, "precomputed", true);
+    }
+
+    // record position of the customer, -1 if absent; absolute reads only, so the buffer is safely shared
+    private int find(byte[] key) {
+        int low = 0;
+        int high = numCustomers - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int record = (int) buffer.getLong(indexStart + mid * 8);
+            int cmp = compareKey(record, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return record;
+            }
+        }
+        return -1;
+    }
+
+    private int compareKey(int record, byte[] key) {
+        int length = buffer.getShort(record) & 0xffff;
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = (buffer.get(record + 2 + i) & 0xff) - (key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - key.length;
+    }
+
+    private static int indexOf(int[] buckets, int value) {
+        for (int i = 0; i < buckets.length; i++) {
+            if (buckets[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(double[] buckets, double value) {
+        for (int i = 0; i < buckets.length; i++) {
+            if (buckets[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int size() {
+        return numCustomers;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    static int slotSize(int outputLength) {
+        return 1 + 2 * outputLength;
+    }
+
+    /**
+     * Everything before the customer index; Precomputer also starts its journal with it, to tell whether a journal
+     * belongs to the same job.
+     */
+    static void writeHeader(DataOutputStream out, Inputs inputs, int outputLength, List<ScoringContext> contexts,
+            int[] paxBuckets, double[] spendBuckets) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(inputs.menu);
+        out.writeLong(inputs.rankings);
+        out.writeLong(inputs.scores);
+        out.writeLong(inputs.notServed);
+        out.writeInt(outputLength);
+        out.writeInt(contexts.size());
+        for (ScoringContext context : contexts) {
+            for (String value : new String[]{context.hour, context.schoolHoliday, context.publicHoliday,
+                    context.weekday, context.outlet, context.day}) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(bytes.length);
+                out.write(bytes);
+            }
+        }
+        out.writeInt(paxBuckets.length);
+        for (int pax : paxBuckets) {
+            out.writeInt(pax);
+        }
+        out.writeInt(spendBuckets.length);
+        for (double spend : spendBuckets) {
+            out.writeDouble(spend);
+        }
+    }
+
+    // item ids, prices and categories in catalog order: anything that changes an answer or an item index
+    static long menuFingerprint(MenuCatalog catalog) {
+        long hash = 1125899906842597L;
+        for (int i = 0; i < catalog.size(); i++) {
+            hash = 31 * hash + catalog.itemIds[i].hashCode();
+            hash = 31 * hash + Float.floatToIntBits(catalog.prices[i]);
+            hash = 31 * hash + catalog.categoryNames[catalog.categoryIdx[i]].hashCode();
+        }
+        return hash;
+    }
+
+    // every outlet's not-served bitset, independent of map order
+    static long notServedFingerprint(Map<String, long[]> notServed) {
+        long hash = 1125899906842597L;
+        for (Map.Entry<String, long[]> outlet : new TreeMap<>(notServed).entrySet()) {
+            hash = 31 * hash + outlet.getKey().hashCode();
+            for (long bits : outlet.getValue()) {
+                hash = 31 * hash + bits;
+            }
+        }
+        return hash;
+    }
+}
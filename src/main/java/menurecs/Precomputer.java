@@ -0,0 +1,289 @@
+package menurecs;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Offline job behind "MenuEngine precompute": solves the empty-basket request for every customer in the CF rankings,
+ * every context in precompute_contexts.csv (same columns as the request parameters) and every party size and spend
+ * per pax bucket, in parallel, and writes the answers to precomputed.bin for the server (see PrecomputedStore).
+ *
+ * Each finished customer is appended to precomputed.bin.journal first, so an interrupted run picks up where it
+ * stopped; the final file is only written, and the journal deleted, once every customer is done.
+ */
+public class Precomputer {
+    static final String CONTEXTS_FILE = "precompute_contexts.csv";
+    static final String OUTPUT_FILE = "precomputed.bin";
+    static final String JOURNAL_FILE = "precomputed.bin.journal";
+    private static final long PROGRESS_INTERVAL_SECONDS = 10;
+
+    private final String dataDir;
+    private final DtScoreCache dtScoreCache;
+    private final int outputLength;
+    private final int[] paxBuckets;
+    private final double[] spendBuckets;
+    private final int threads;
+    private final int deadlineMs;
+
+    public Precomputer(String dataDir, DtScoreCache dtScoreCache, int outputLength, int[] paxBuckets,
+            double[] spendBuckets, int threads, int deadlineMs) {
+        this.dataDir = dataDir;
+        this.dtScoreCache = dtScoreCache;
+        this.outputLength = outputLength;
+        this.paxBuckets = paxBuckets;
+        this.spendBuckets = spendBuckets;
+        this.threads = threads;
+        this.deadlineMs = deadlineMs;
+    }
+
+    /**
+     * Job configured from -Dmenurecs.precompute.outputLength (default 5), .pax (comma-separated party sizes, default
+     * 1,2,3,4,5,6), .spend (spends per pax, default 10,15,20,25,30), .threads (default: number of cores) and
+     * .deadlineMs (per solve, default 60000; answers that are not proven optimal are left to the online solve).
+     */
+    public static Precomputer fromSystemProperties(String dataDir, DtScoreCache dtScoreCache) {
+        String[] pax = System.getProperty("menurecs.precompute.pax", "1,2,3,4,5,6").split(",");
+        int[] paxBuckets = new int[pax.length];
+        for (int i = 0; i < pax.length; i++) {
+            paxBuckets[i] = Integer.parseInt(pax[i].trim());
+        }
+        String[] spend = System.getProperty("menurecs.precompute.spend", "10,15,20,25,30").split(",");
+        double[] spendBuckets = new double[spend.length];
+        for (int i = 0; i < spend.length; i++) {
+            spendBuckets[i] = Double.parseDouble(spend[i].trim());
+        }
+        return new Precomputer(dataDir, dtScoreCache, Integer.getInteger("menurecs.precompute.outputLength", 5),
+                paxBuckets, spendBuckets,
+                Integer.getInteger("menurecs.precompute.threads", Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger("menurecs.precompute.deadlineMs", 60000));
+    }
+
+    /**
+     * Run (or resume) the job. Returns false if some customers failed; they stay out of the journal, so running
+     * again retries just those.
+     */
+    public boolean run(DataSnapshot snapshot) throws IOException, InterruptedException {
+        if (snapshot.inputs.scores == Scorer.UNKNOWN_FINGERPRINT) {
+            // the server would never use the result
+            System.err.println("Error: set -Dmenurecs.scoring.modelVersion to the R model's version, so the server can "
+                    + "tell when the precomputed answers no longer match its scores.");
+            return false;
+        }
+        long start = System.nanoTime();
+        List<ScoringContext> contexts = readContexts(new File(dataDir, CONTEXTS_FILE));
+        int slots = contexts.size() * paxBuckets.length * spendBuckets.length;
+        int recordSize = slots * PrecomputedStore.slotSize(outputLength);
+
+        // every context's DT scores up front; the solves then never wait on the R service
+        List<CompletableFuture<DtRankTable>> dtRanks = new ArrayList<>();
+        for (ScoringContext context : contexts) {
+            CompletableFuture<DtRankTable> dtRank = dtScoreCache.getAsync(context);
+            MenuEngine.awaitDtRanks(dtRank);
+            dtRanks.add(dtRank);
+        }
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        try (DataOutputStream header = new DataOutputStream(headerBytes)) {
+            PrecomputedStore.writeHeader(header, snapshot.inputs, outputLength, contexts, paxBuckets, spendBuckets);
+        }
+        byte[] header = headerBytes.toByteArray();
+
+        File journalFile = new File(dataDir, JOURNAL_FILE);
+        Map<String, byte[]> records = new ConcurrentHashMap<>(resume(journalFile, header, recordSize));
+        List<String> customers = new ArrayList<>();
+        for (String customerId : snapshot.rankings.customerIds()) {
+            if (!records.containsKey(customerId)) {
+                customers.add(customerId);
+            }
+        }
+        int total = records.size() + customers.size();
+        System.out.println("Precomputing " + customers.size() + " customers (" + records.size()
+                + " already done) x " + contexts.size() + " contexts x " + paxBuckets.length + " party sizes x "
+                + spendBuckets.length + " spends on " + threads + " threads");
+
+        AtomicLong solves = new AtomicLong();
+        AtomicInteger failures = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "precompute-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (OutputStream journal = new FileOutputStream(journalFile, true)) {
+            if (journalFile.length() == 0) {
+                journal.write(header);
+            }
+            long solveStart = System.nanoTime();
+            for (String customerId : customers) {
+                workers.execute(() -> {
+                    try {
+                        byte[] record = solveCustomer(snapshot, customerId, contexts, dtRanks, recordSize, solves);
+                        // whole records only, so a resumed run never reads half an answer
+                        synchronized (journal) {
+                            journal.write(record);
+                            journal.flush();
+                        }
+                        records.put(customerId, record);
+                    } catch (Exception e) {
+                        System.err.println("Error: could not precompute customer " + customerId + ": " + e);
+                        failures.incrementAndGet();
+                    }
+                });
+            }
+            workers.shutdown();
+            while (!workers.awaitTermination(PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS)) {
+                System.out.println("Precomputed " + records.size() + "/" + total + " customers, "
+                        + solvesPerSecond(solves.get(), solveStart) + " solves/sec");
+            }
+            System.out.println("Solved " + solves.get() + " requests, " + solvesPerSecond(solves.get(), solveStart)
+                    + " solves/sec");
+        } finally {
+            workers.shutdownNow();
+        }
+
+        if (failures.get() > 0) {
+            System.err.println("Error: " + failures.get() + " customers failed; run again to retry them");
+            return false;
+        }
+        File outputFile = new File(dataDir, OUTPUT_FILE);
+        write(outputFile, header, records);
+        Files.delete(journalFile.toPath());
+        System.out.println("Wrote " + records.size() + " customers to " + outputFile + " in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+        return true;
+    }
+
+    private byte[] solveCustomer(DataSnapshot snapshot, String customerId, List<ScoringContext> contexts,
+            List<CompletableFuture<DtRankTable>> dtRanks, int recordSize, AtomicLong solves) {
+        byte[] key = customerId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(2 + key.length + recordSize);
+        record.putShort((short) key.length).put(key);
+        for (int c = 0; c < contexts.size(); c++) {
+            for (int pax : paxBuckets) {
+                for (double spend : spendBuckets) {
+                    RecommendRequest request = new RecommendRequest(customerId, outputLength, pax, spend,
+                            new int[0], new int[0], 0, contexts.get(c), deadlineMs);
+                    Recommendation recommendation = MenuEngine.computeRecommendation(snapshot, request,
+                            dtRanks.get(c), MenuEngine.deadlineFor(System.nanoTime(), deadlineMs));
+                    solves.incrementAndGet();
+
+                    int slotStart = record.position();
+                    if (recommendation.optimal && recommendation.itemIds.size() <= outputLength) {
+                        record.put((byte) recommendation.itemIds.size());
+                        for (String itemId : recommendation.itemIds) {
+                            record.putShort((short) snapshot.catalog.indexOf(itemId));
+                        }
+                    } else {
+                        record.put((byte) PrecomputedStore.NOT_STORED);
+                    }
+                    record.position(slotStart + PrecomputedStore.slotSize(outputLength));
+                }
+            }
+        }
+        return record.array();
+    }
+
+    // the customers a previous run finished, if the journal is for the same job; drops a half-written last record
+    private static Map<String, byte[]> resume(File journalFile, byte[] header, int recordSize) throws IOException {
+        Map<String, byte[]> records = new HashMap<>();
+        if (!journalFile.exists()) {
+            return records;
+        }
+        long goodLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+            byte[] journalHeader = new byte[header.length];
+            try {
+                in.readFully(journalHeader);
+            } catch (EOFException e) {
+                journalHeader = null;
+            }
+            if (!Arrays.equals(journalHeader, header)) {
+                System.out.println("Ignoring " + journalFile + ": it is for different inputs or job configuration");
+                Files.delete(journalFile.toPath());
+                return records;
+            }
+            goodLength = header.length;
+            try {
+                while (true) {
+                    int keyLength = in.readUnsignedShort();
+                    byte[] record = new byte[2 + keyLength + recordSize];
+                    record[0] = (byte) (keyLength >>> 8);
+                    record[1] = (byte) keyLength;
+                    in.readFully(record, 2, record.length - 2);
+                    records.put(new String(record, 2, keyLength, StandardCharsets.UTF_8), record);
+                    goodLength += record.length;
+                }
+            } catch (EOFException e) {
+                // end of the journal, or a record cut short by the interruption
+            }
+        }
+        try (FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(goodLength);
+        }
+        System.out.println("Resuming from " + journalFile + ": " + records.size() + " customers done");
+        return records;
+    }
+
+    private static void write(File outputFile, byte[] header, Map<String, byte[]> records) throws IOException {
+        List<byte[]> sorted = new ArrayList<>(records.size());
+        List<byte[]> keys = new ArrayList<>(records.size());
+        for (Map.Entry<String, byte[]> entry : records.entrySet()) {
+            sorted.add(entry.getValue());
+            keys.add(entry.getKey().getBytes(StandardCharsets.UTF_8));
+        }
+        Integer[] order = new Integer[sorted.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> RankingStoreConverter.compareUnsigned(keys.get(a), keys.get(b)));
+
+        // written beside the target and moved over it, so the server never maps a half-written file
+        File tmpFile = new File(outputFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.write(header);
+            out.writeInt(order.length);
+            long offset = header.length + 4 + 8L * order.length;
+            for (int i : order) {
+                out.writeLong(offset);
+                offset += sorted.get(i).length;
+            }
+            if (offset > Integer.MAX_VALUE) {
+                throw new IOException("Precomputed recommendations would be larger than 2GB");
+            }
+            for (int i : order) {
+                out.write(sorted.get(i));
+            }
+        }
+        Files.move(tmpFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static List<ScoringContext> readContexts(File file) throws IOException {
+        List<ScoringContext> contexts = new ArrayList<>();
+        try (Reader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+             CSVParser parser = CSVFormat.DEFAULT.withHeader().withSkipHeaderRecord().parse(in)) {
+            for (CSVRecord record : parser) {
+                contexts.add(ScoringContext.normalized(record.get("hour"), record.get("school_holiday"),
+                        record.get("public_holiday"), record.get("weekday"), record.get("outlet"), record.get("day")));
+            }
+        }
+        return contexts;
+    }
+
+    private static long solvesPerSecond(long solves, long since) {
+        long nanos = System.nanoTime() - since;
+        return nanos > 0 ? solves * 1000000000L / nanos : 0;
+    }
+}
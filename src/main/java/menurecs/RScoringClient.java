@@ -0,0 +1,212 @@
+package menurecs;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-lived client for the R predictive-scoring service (GET /json), shared by all requests. Connections are pooled
+ * and kept alive, calls are bounded by connect/read timeouts, and at most maxInFlight calls run at once.
+ */
+public class RScoringClient implements Scorer, Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(RScoringClient.class);
+
+    private final String host;
+    private final int port;
+    private final int maxInFlight;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final Semaphore inFlight;
+    private final long acquireTimeoutMs;
+    private final ExecutorService asyncExecutor;
+    // the R service's model can't be inspected from here, so it is identified by a configured version
+    private final String modelVersion;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * acquireTimeoutMs bounds the wait for one of the maxInFlight slots (and a pooled connection) before a call is
+     * rejected; connectTimeoutMs and readTimeoutMs apply once it has one.
+     */
+    public RScoringClient(String host, int port, int connectTimeoutMs, int readTimeoutMs, int maxInFlight,
+            int acquireTimeoutMs, String modelVersion) {
+        this.host = host;
+        this.port = port;
+        this.maxInFlight = maxInFlight;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+
+        // every call goes to the same route, so the route limit is the pool size
+        connectionManager = new PoolingHttpClientConnectionManager(60, TimeUnit.SECONDS);
+        connectionManager.setMaxTotal(maxInFlight);
+        connectionManager.setDefaultMaxPerRoute(maxInFlight);
+        connectionManager.setValidateAfterInactivity(2000);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMs)
+                .setConnectionRequestTimeout(acquireTimeoutMs)
+                .setSocketTimeout(readTimeoutMs)
+                .build();
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictIdleConnections(30, TimeUnit.SECONDS)
+                .build();
+
+        inFlight = new Semaphore(maxInFlight);
+        asyncExecutor = Executors.newFixedThreadPool(maxInFlight, runnable -> {
+            Thread thread = new Thread(runnable, "r-scoring");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.modelVersion = modelVersion;
+    }
+
+    /**
+     * Client configured from -Dmenurecs.scoring.host, .port, .connectTimeoutMs, .readTimeoutMs, .maxInFlight,
+     * .acquireTimeoutMs and .modelVersion (any label for the deployed R model, to be changed whenever it is).
+     */
+    public static RScoringClient fromSystemProperties() {
+        return new RScoringClient(
+                System.getProperty("menurecs.scoring.host", "localhost"),
+                Integer.getInteger("menurecs.scoring.port", 8000),
+                Integer.getInteger("menurecs.scoring.connectTimeoutMs", 1000),
+                Integer.getInteger("menurecs.scoring.readTimeoutMs", 5000),
+                Integer.getInteger("menurecs.scoring.maxInFlight", 32),
+                Integer.getInteger("menurecs.scoring.acquireTimeoutMs", 1000),
+                System.getProperty("menurecs.scoring.modelVersion", ""));
+    }
+
+    /**
+     * From the configured model version; UNKNOWN_FINGERPRINT when none is set, since a retrained model can't be told
+     * apart from the old one then.
+     */
+    @Override
+    public long fingerprint() {
+        // never 0 for a version that is set
+        return modelVersion.isEmpty() ? UNKNOWN_FINGERPRINT : modelVersion.hashCode() | (1L << 32);
+    }
+
+    /**
+     * Fetch and rank the decision-tree scores for a context.
+     */
+    @Override
+    public DtRankTable score(ScoringContext context) throws IOException {
+        return DtRankTable.parse(fetchJson(context));
+    }
+
+    /**
+     * The R service's raw JSON response for a context.
+     */
+    String fetchJson(ScoringContext context) throws IOException {
+        URI uri;
+        try {
+            uri = new URIBuilder()
+                    .setScheme("http")
+                    .setHost(host)
+                    .setPort(port)
+                    .setPath("/json")
+                    .setParameter("hour", context.hour)
+                    .setParameter("school_holiday", context.schoolHoliday)
+                    .setParameter("public_holiday", context.publicHoliday)
+                    .setParameter("weekday", context.weekday)
+                    .setParameter("outlet", context.outlet)
+                    .setParameter("day", context.day)
+                    .build();
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid parameters for R service", e);
+        }
+
+        try {
+            if (!inFlight.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                rejected.incrementAndGet();
+                throw new IOException("Too many requests in flight to R service");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for R service", e);
+        }
+
+        requests.incrementAndGet();
+        long start = System.nanoTime();
+        String jsonResponse;
+        try (CloseableHttpResponse response = httpClient.execute(new HttpGet(uri))) {
+            // always consume the entity so the connection goes back to the pool
+            jsonResponse = EntityUtils.toString(response.getEntity());
+            if (response.getStatusLine().getStatusCode() != 200) {
+                throw new IOException("R service returned " + response.getStatusLine());
+            }
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            throw e;
+        } finally {
+            inFlight.release();
+            Metrics.R_CALL.recordSince(start);
+        }
+        LOG.debug("R server response: {}", jsonResponse);
+
+        return jsonResponse;
+    }
+
+    /**
+     * score on the client's own threads, so the caller can prepare candidates while the R call is in flight.
+     */
+    @Override
+    public CompletableFuture<DtRankTable> scoreAsync(ScoringContext context) {
+        CompletableFuture<DtRankTable> future = new CompletableFuture<>();
+        try {
+            asyncExecutor.execute(() -> {
+                try {
+                    future.complete(score(context));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Connection pool and call counters, for the /status endpoint.
+     */
+    @Override
+    public Map<String, Object> getStats() {
+        PoolStats pool = connectionManager.getTotalStats();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("poolLeased", pool.getLeased());
+        stats.put("poolAvailable", pool.getAvailable());
+        stats.put("poolPending", pool.getPending());
+        stats.put("poolMax", pool.getMax());
+        stats.put("inFlight", maxInFlight - inFlight.availablePermits());
+        stats.put("maxInFlight", maxInFlight);
+        stats.put("requests", requests.get());
+        stats.put("failures", failures.get());
+        stats.put("rejected", rejected.get());
+        return stats;
+    }
+
+    @Override
+    public void close() throws IOException {
+        asyncExecutor.shutdownNow();
+        httpClient.close();
+    }
+}
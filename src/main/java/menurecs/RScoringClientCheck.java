@@ -0,0 +1,209 @@
+package menurecs;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks RScoringClient against a stub R service on a local port: parsing, error statuses, read timeouts, waiting
+ * for an in-flight slot and unreachable hosts. Needs neither the R service nor any data files:
+ *
+ * java -cp menu-recs-1.0-jar-with-dependencies.jar menurecs.RScoringClientCheck
+ *
+ * Exits with status 1 if any check fails.
+ */
+public class RScoringClientCheck {
+    private static final String SCORES = "[{\"I002 \": 0.25, \"I001 \": 0.75, \"I003 \": 0.25, \"TAKEAWAY \": 0.5}]";
+    private static final int READ_TIMEOUT_MS = 300;
+    private static final int ACQUIRE_TIMEOUT_MS = 200;
+
+    // the stub answers by the context's hour: "ok", "error", "garbage", "slow" (past the read timeout) or "block"
+    private final HttpServer stub;
+    private final int port;
+    private volatile String lastQuery;
+    private final CountDownLatch blockArrived = new CountDownLatch(1);
+    private final CountDownLatch unblock = new CountDownLatch(1);
+
+    private int failed;
+
+    private RScoringClientCheck() throws IOException {
+        stub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stub.createContext("/json", this::handle);
+        // blocked and slow calls must not hold up the others
+        stub.setExecutor(Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "r-stub");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        stub.start();
+        port = stub.getAddress().getPort();
+    }
+
+    public static void main(String[] args) throws Exception {
+        RScoringClientCheck check = new RScoringClientCheck();
+        try {
+            check.run();
+        } finally {
+            check.stub.stop(0);
+        }
+        System.out.println(check.failed == 0 ? "All checks passed" : check.failed + " checks failed");
+        if (check.failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        lastQuery = query;
+        int status = 200;
+        String body = SCORES;
+        try {
+            if (query.contains("hour=error")) {
+                status = 500;
+                body = "model not loaded";
+            } else if (query.contains("hour=garbage")) {
+                body = "<html>not json</html>";
+            } else if (query.contains("hour=slow")) {
+                Thread.sleep(READ_TIMEOUT_MS * 4);
+            } else if (query.contains("hour=block")) {
+                blockArrived.countDown();
+                unblock.await(10, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        } catch (IOException e) {
+            // the client gave up first
+        }
+    }
+
+    private void run() throws Exception {
+        try (RScoringClient client = client(port, 4)) {
+            DtRankTable table = client.score(context("ok"));
+            check("response is ranked, ties by item id, without TAKEAWAY",
+                    Arrays.equals(table.itemIds, new String[]{"I001", "I002", "I003"}),
+                    Arrays.toString(table.itemIds));
+            check("every context value is sent",
+                    lastQuery.equals("hour=ok&school_holiday=0&public_holiday=1&weekday=2&outlet=3&day=4"), lastQuery);
+
+            IOException error = expectIOException(() -> client.score(context("error")));
+            check("a 500 is an IOException naming the status",
+                    error != null && error.getMessage().contains("500"), String.valueOf(error));
+            check("the pooled connection still works after an error", scores(client, context("ok")), null);
+
+            long start = System.nanoTime();
+            IOException timeout = expectIOException(() -> client.score(context("slow")));
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            check("a slow answer times out after the read timeout",
+                    timeout != null && elapsedMs < READ_TIMEOUT_MS * 3, timeout + " after " + elapsedMs + " ms");
+
+            CompletableFuture<DtRankTable> garbage = client.scoreAsync(context("garbage"));
+            check("an unparseable answer fails the future", failsWithin(garbage, 5000), null);
+
+            check("failures are counted", client.getStats().get("failures").equals(2L),
+                    String.valueOf(client.getStats()));
+        }
+
+        try (RScoringClient client = client(port, 1)) {
+            CompletableFuture<DtRankTable> holder = client.scoreAsync(context("block"));
+            blockArrived.await(5, TimeUnit.SECONDS);
+            long start = System.nanoTime();
+            IOException rejected = expectIOException(() -> client.score(context("ok")));
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            check("a call with every slot busy is rejected after the acquire timeout",
+                    rejected != null && rejected.getMessage().contains("in flight")
+                            && elapsedMs >= ACQUIRE_TIMEOUT_MS - 10 && elapsedMs < ACQUIRE_TIMEOUT_MS * 5,
+                    rejected + " after " + elapsedMs + " ms");
+            check("rejections are counted", client.getStats().get("rejected").equals(1L),
+                    String.valueOf(client.getStats()));
+
+            CompletableFuture<DtRankTable> waiting = client.scoreAsync(context("ok"));
+            Thread.sleep(ACQUIRE_TIMEOUT_MS / 4);
+            unblock.countDown();
+            check("a call waiting for a slot goes ahead once one frees up",
+                    succeedsWithin(holder, 5000) && succeedsWithin(waiting, 5000), null);
+        }
+
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+        try (RScoringClient client = client(closedPort, 1)) {
+            IOException refused = expectIOException(() -> client.score(context("ok")));
+            check("an unreachable service is an IOException", refused != null, null);
+            check("the slot is given back after it", client.getStats().get("inFlight").equals(0),
+                    String.valueOf(client.getStats()));
+        }
+    }
+
+    private static RScoringClient client(int port, int maxInFlight) {
+        return new RScoringClient("localhost", port, 1000, READ_TIMEOUT_MS, maxInFlight, ACQUIRE_TIMEOUT_MS, "check");
+    }
+
+    private static ScoringContext context(String hour) {
+        return new ScoringContext(hour, "0", "1", "2", "3", "4");
+    }
+
+    private interface Call {
+        void run() throws IOException;
+    }
+
+    private static IOException expectIOException(Call call) {
+        try {
+            call.run();
+            return null;
+        } catch (IOException e) {
+            return e;
+        }
+    }
+
+    private static boolean scores(RScoringClient client, ScoringContext context) {
+        try {
+            return client.score(context).size() == 3;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean succeedsWithin(CompletableFuture<DtRankTable> future, long timeoutMs) throws Exception {
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS).size() == 3;
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+
+    private static boolean failsWithin(CompletableFuture<DtRankTable> future, long timeoutMs) throws Exception {
+        try {
+            future.get(timeoutMs, TimeUnit.MILLISECONDS);
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        }
+    }
+
+    private void check(String name, boolean passed, String detail) {
+        if (passed) {
+            System.out.println("ok: " + name);
+        } else {
+            failed++;
+            System.out.println("FAILED: " + name + (detail != null ? " (" + detail + ")" : ""));
+        }
+    }
+}
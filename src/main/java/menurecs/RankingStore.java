@@ -0,0 +1,20 @@
+package menurecs;
+
+import java.util.List;
+
+/**
+ * Per-customer collaborative-filtering rankings.
+ */
+public interface RankingStore {
+    /**
+     * The customer's ranking as catalog item indices, best first, or null if there's no CF data for them.
+     */
+    short[] get(String customerId);
+
+    /**
+     * Every customer with CF data.
+     */
+    List<String> customerIds();
+
+    int size();
+}
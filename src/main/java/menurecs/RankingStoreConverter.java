@@ -0,0 +1,136 @@
+package menurecs;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Offline converter from recommendation.csv to the binary recommendation.bin read by MappedRankingStore:
+ *
+ * java -cp menu-recs-1.0-jar-with-dependencies.jar menurecs.RankingStoreConverter [dataDir]
+ *
+ * The server uses recommendation.bin instead of the CSV whenever it exists.
+ */
+public class RankingStoreConverter {
+
+    public static void main(String[] args) throws IOException {
+        String dataDir = args.length > 0 ? args[0] : "data";
+        File csvFile = new File(dataDir, "recommendation.csv");
+        File binFile = new File(dataDir, "recommendation.bin");
+
+        long start = System.nanoTime();
+        int numCustomers = convert(csvFile, binFile);
+        System.out.println("Wrote " + numCustomers + " customers to " + binFile + " in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    static int convert(File csvFile, File binFile) throws IOException {
+        // file-local item ids; the reader maps them onto whatever menu is loaded
+        Map<String, Integer> itemIndex = new LinkedHashMap<>();
+        List<byte[]> keys = new ArrayList<>();
+        List<short[]> rankings = new ArrayList<>();
+
+        try (Reader in = Files.newBufferedReader(csvFile.toPath(), StandardCharsets.UTF_8);
+             CSVParser parser = CSVFormat.DEFAULT.withHeader().withSkipHeaderRecord().parse(in)) {
+            // the same header rules as the server's CSV reader
+            int userColumn = RecommendationCsvReader.userColumn(new ArrayList<>(parser.getHeaderMap().keySet()));
+            if (userColumn < 0) {
+                throw new IOException(csvFile + " has no user column");
+            }
+            int numColumns = parser.getHeaderMap().size();
+            short[] recItems = new short[numColumns];
+            for (CSVRecord record : parser) {
+                int numRecItems = 0;
+                for (int i = 0; i < numColumns && i < record.size(); i++) {
+                    String item = record.get(i);
+                    if (i == userColumn || item.equals("TAKEAWAY") || item.isEmpty()) {
+                        continue;
+                    }
+                    Integer index = itemIndex.get(item);
+                    if (index == null) {
+                        index = itemIndex.size();
+                        if (index > 0xffff) {
+                            throw new IOException("More than 65536 distinct items in " + csvFile);
+                        }
+                        itemIndex.put(item, index);
+                    }
+                    recItems[numRecItems++] = (short) (int) index;
+                }
+                keys.add(record.get(userColumn).getBytes(StandardCharsets.UTF_8));
+                rankings.add(Arrays.copyOf(recItems, numRecItems));
+            }
+        }
+
+        // sort by customer id, in the unsigned byte order the reader searches in
+        Integer[] order = new Integer[keys.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> compareUnsigned(keys.get(a), keys.get(b)));
+
+        long headerSize = 4 + 4 + 4;
+        for (String itemId : itemIndex.keySet()) {
+            headerSize += 2 + itemId.getBytes(StandardCharsets.UTF_8).length;
+        }
+        headerSize += 4 + 8L * order.length;
+
+        // written beside the target and moved over it: a running server has the old file mapped, and the data watcher
+        // would otherwise map a half-written one
+        File tmpFile = new File(binFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.writeInt(MappedRankingStore.MAGIC);
+            out.writeInt(MappedRankingStore.VERSION);
+            out.writeInt(itemIndex.size());
+            for (String itemId : itemIndex.keySet()) {
+                writeString(out, itemId.getBytes(StandardCharsets.UTF_8));
+            }
+
+            out.writeInt(order.length);
+            long offset = headerSize;
+            for (int i : order) {
+                out.writeLong(offset);
+                offset += 2 + keys.get(i).length + 2 + 2L * rankings.get(i).length;
+            }
+            if (offset > Integer.MAX_VALUE) {
+                throw new IOException("Ranking store would be larger than 2GB");
+            }
+
+            for (int i : order) {
+                writeString(out, keys.get(i));
+                short[] ranking = rankings.get(i);
+                out.writeShort(ranking.length);
+                for (short item : ranking) {
+                    out.writeShort(item);
+                }
+            }
+        }
+        Files.move(tmpFile.toPath(), binFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        return order.length;
+    }
+
+    private static void writeString(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes.length > 0xffff) {
+            throw new IOException("String too long for ranking store");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    static int compareUnsigned(byte[] a, byte[] b) {
+        int common = Math.min(a.length, b.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return a.length - b.length;
+    }
+}
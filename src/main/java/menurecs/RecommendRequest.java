@@ -0,0 +1,196 @@
+package menurecs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A validated /recommend request, with basket items resolved to catalog indices. Shared by the single and batch
+ * endpoints so both accept exactly the same parameters.
+ */
+public class RecommendRequest {
+    static final String[] REQUIRED_PARAMS = {"customerid", "outputlength", "numpax", "targetspend", "itemids",
+            "itemqty", "hour", "school_holiday", "public_holiday", "weekday", "outlet", "day"};
+    // what parseInt returns for anything but an int
+    private static final long NOT_AN_INT = Long.MIN_VALUE;
+    // shared by every empty basket; never written to
+    private static final int[] EMPTY_BASKET = new int[0];
+
+    final String customerId;
+    final int outputLength;
+    final int numPax;
+    final double targetSpend;
+    final int[] basketItems;
+    final int[] basketQty;
+    final int numBasketItems;
+    final ScoringContext context;
+    // optional latency budget in milliseconds, 0 for the server default
+    final int deadlineMs;
+
+    RecommendRequest(String customerId, int outputLength, int numPax, double targetSpend, int[] basketItems,
+            int[] basketQty, int numBasketItems, ScoringContext context, int deadlineMs) {
+        this.customerId = customerId;
+        this.outputLength = outputLength;
+        this.numPax = numPax;
+        this.targetSpend = targetSpend;
+        this.basketItems = basketItems;
+        this.basketQty = basketQty;
+        this.numBasketItems = numBasketItems;
+        this.context = context;
+        this.deadlineMs = deadlineMs;
+    }
+
+    /**
+     * Parse a request from its parameters (null if absent), looking each one up once and parsing it straight into
+     * primitives; basket item ids are resolved to catalog indices without splitting the lists into Strings. Throws
+     * InvalidRequestException for missing, non-numeric or out-of-range parameters, a basket whose item ids and
+     * quantities don't line up, or an unknown item id. The customer id and the context are normalized here (see
+     * ScoringContext.normalized), once, so everything downstream can compare them as they are.
+     */
+    static RecommendRequest parse(Function<String, String> params, MenuCatalog catalog)
+            throws InvalidRequestException {
+        String customerId = params.apply("customerid");
+        String outputLengthParam = params.apply("outputlength");
+        String numPaxParam = params.apply("numpax");
+        String targetSpendParam = params.apply("targetspend");
+        String itemIds = params.apply("itemids");
+        String itemQty = params.apply("itemqty");
+        String hour = params.apply("hour");
+        String schoolHoliday = params.apply("school_holiday");
+        String publicHoliday = params.apply("public_holiday");
+        String weekday = params.apply("weekday");
+        String outlet = params.apply("outlet");
+        String day = params.apply("day");
+        String deadlineParam = params.apply("deadlinems");
+
+        // check for required params; the message is only built for a bad request
+        if (customerId == null || outputLengthParam == null || numPaxParam == null || targetSpendParam == null
+                || itemIds == null || itemQty == null || hour == null || schoolHoliday == null
+                || publicHoliday == null || weekday == null || outlet == null || day == null) {
+            List<String> missingParams = new ArrayList<>();
+            for (String param : REQUIRED_PARAMS) {
+                if (params.apply(param) == null) {
+                    missingParams.add(param);
+                }
+            }
+            throw new InvalidRequestException("Missing parameter(s): " + String.join(", ", missingParams));
+        }
+
+        customerId = customerId.trim();
+
+        // check for integer params (the customer id is kept as a string, but must look like one)
+        long customerNumber = parseInt(customerId, 0, customerId.length());
+        long outputLength = parseInt(outputLengthParam, 0, outputLengthParam.length());
+        long numPax = parseInt(numPaxParam, 0, numPaxParam.length());
+        long deadlineMs = deadlineParam == null ? 0 : parseInt(deadlineParam, 0, deadlineParam.length());
+        if (customerNumber == NOT_AN_INT || outputLength == NOT_AN_INT || numPax == NOT_AN_INT
+                || deadlineMs == NOT_AN_INT) {
+            List<String> notIntegerParams = new ArrayList<>();
+            if (customerNumber == NOT_AN_INT) {
+                notIntegerParams.add("customerid");
+            }
+            if (outputLength == NOT_AN_INT) {
+                notIntegerParams.add("outputlength");
+            }
+            if (numPax == NOT_AN_INT) {
+                notIntegerParams.add("numpax");
+            }
+            if (deadlineMs == NOT_AN_INT) {
+                notIntegerParams.add("deadlinems");
+            }
+            throw new InvalidRequestException("Non-integer parameter(s): " + String.join(", ", notIntegerParams));
+        }
+
+        // check for double params
+        double targetSpend;
+        try {
+            targetSpend = Double.parseDouble(targetSpendParam);
+        } catch (NumberFormatException e) {
+            throw new InvalidRequestException("Non-double parameter(s): targetspend");
+        }
+
+        // and that they are in range
+        if (outputLength <= 0) {
+            throw new InvalidRequestException("Parameter outputlength must be positive");
+        }
+        if (numPax <= 0) {
+            throw new InvalidRequestException("Parameter numpax must be positive");
+        }
+        if (!(targetSpend >= 0) || Double.isInfinite(targetSpend)) {
+            throw new InvalidRequestException("Parameter targetspend must be a non-negative number");
+        }
+        if (deadlineParam != null && deadlineMs <= 0) {
+            throw new InvalidRequestException("Parameter deadlinems must be positive");
+        }
+
+        // the basket: comma-separated ids and quantities, walked in step; "" for an empty basket
+        int numBasketItems = itemIds.isEmpty() ? 0 : count(itemIds, ',') + 1;
+        if (numBasketItems != (itemQty.isEmpty() ? 0 : count(itemQty, ',') + 1)) {
+            throw new InvalidRequestException("Differing number of item ids and qty");
+        }
+        int[] basketItems = numBasketItems == 0 ? EMPTY_BASKET : new int[numBasketItems];
+        int[] basketQty = numBasketItems == 0 ? EMPTY_BASKET : new int[numBasketItems];
+        for (int i = 0, idStart = 0, qtyStart = 0; i < numBasketItems; i++) {
+            int idEnd = end(itemIds, idStart);
+            int qtyEnd = end(itemQty, qtyStart);
+            int item = catalog.indexOf(itemIds, idStart, idEnd);
+            if (item < 0) {
+                throw new InvalidRequestException("Unknown item id: " + itemIds.substring(idStart, idEnd));
+            }
+            long qty = parseInt(itemQty, qtyStart, qtyEnd);
+            if (qty == NOT_AN_INT || qty <= 0) {
+                throw new InvalidRequestException("Item quantities must be positive integers: " + itemQty);
+            }
+            basketItems[i] = item;
+            basketQty[i] = (int) qty;
+            idStart = idEnd + 1;
+            qtyStart = qtyEnd + 1;
+        }
+
+        return new RecommendRequest(customerId, (int) outputLength, (int) numPax, targetSpend, basketItems, basketQty,
+                numBasketItems, ScoringContext.normalized(hour, schoolHoliday, publicHoliday, weekday, outlet, day),
+                (int) deadlineMs);
+    }
+
+    /**
+     * The int at [from, to) of s, as Integer.parseInt would read it, or NOT_AN_INT.
+     */
+    static long parseInt(String s, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            negative = s.charAt(i) == '-';
+            i++;
+        }
+        if (i == to) {
+            return NOT_AN_INT;
+        }
+        long value = 0;
+        for (; i < to; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return NOT_AN_INT;
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                return NOT_AN_INT;
+            }
+        }
+        value = negative ? -value : value;
+        return value > Integer.MAX_VALUE ? NOT_AN_INT : value;
+    }
+
+    private static int count(String s, char c) {
+        int count = 0;
+        for (int i = s.indexOf(c); i >= 0; i = s.indexOf(c, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    // end of the comma-separated entry starting at from
+    private static int end(String s, int from) {
+        int comma = s.indexOf(',', from);
+        return comma < 0 ? s.length() : comma;
+    }
+}
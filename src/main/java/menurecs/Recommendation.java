@@ -0,0 +1,34 @@
+package menurecs;
+
+import java.util.List;
+
+/**
+ * The recommended item ids for one request, and which solver they came from (see SolverResult.getSource). Clients
+ * get the source in the X-Recommendation-Source header.
+ */
+public class Recommendation {
+    static final String SOURCE_HEADER = "X-Recommendation-Source";
+
+    final List<String> itemIds;
+    final String source;
+    // proven optimal, so the same inputs would always give the same answer
+    final boolean optimal;
+
+    public Recommendation(List<String> itemIds, String source, boolean optimal) {
+        this.itemIds = itemIds;
+        this.source = source;
+        this.optimal = optimal;
+    }
+
+    public List<String> getItemIds() {
+        return itemIds;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public boolean isOptimal() {
+        return optimal;
+    }
+}
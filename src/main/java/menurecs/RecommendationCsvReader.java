@@ -0,0 +1,324 @@
+package menurecs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Parses recommendation.csv in parallel. The file is split into byte ranges of about equal size, and each range is
+ * read through its own buffered positional reads on one FileChannel and parsed on a worker: a range owns the lines
+ * that start in it. The header is resolved once, item ids are looked up straight from the bytes (a hash table over
+ * the catalog's ids in UTF-8), and only the customer ids become Strings.
+ *
+ * Rows are lines, so a quoted field can't span lines. A row with no customer id or an unterminated quote is counted
+ * and skipped rather than failing the load.
+ */
+class RecommendationCsvReader {
+    private static final int BUFFER_SIZE = 1 << 16;
+    // below this, a range isn't worth a thread of its own
+    private static final long MIN_CHUNK_BYTES = 1 << 20;
+    private static final byte[] TAKEAWAY = "TAKEAWAY".getBytes(StandardCharsets.UTF_8);
+
+    // open-addressing table of catalog item ids as UTF-8, with the catalog index of each; -1 marks an empty slot
+    private final byte[][] itemIds;
+    private final int[] itemIndices;
+    private final int mask;
+    private final int threads;
+
+    int rows;
+    int malformedRows;
+    int unknownItems;
+
+    RecommendationCsvReader(MenuCatalog catalog, int threads) {
+        this.threads = Math.max(1, threads);
+        int capacity = Integer.highestOneBit(Math.max(4, catalog.size() * 4) - 1) << 1;
+        mask = capacity - 1;
+        itemIds = new byte[capacity][];
+        itemIndices = new int[capacity];
+        Arrays.fill(itemIndices, -1);
+        for (int i = 0; i < catalog.size(); i++) {
+            byte[] id = catalog.getItemId(i).getBytes(StandardCharsets.UTF_8);
+            int slot = hash(id, 0, id.length) & mask;
+            while (itemIndices[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            itemIds[slot] = id;
+            itemIndices[slot] = i;
+        }
+    }
+
+    /**
+     * Each customer's ranking as catalog item indices, best first; a customer listed twice keeps the later row.
+     */
+    Map<String, short[]> read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            LineReader header = new LineReader(channel, 0, channel.size());
+            if (!header.next()) {
+                throw new IOException(file + " is empty");
+            }
+            List<String> columns = Arrays.asList(new String(header.line, 0, header.length, StandardCharsets.UTF_8)
+                    .trim().split(","));
+            int userColumn = userColumn(columns);
+            if (userColumn < 0) {
+                throw new IOException(file + " has no user column");
+            }
+
+            long dataStart = header.position;
+            long size = channel.size();
+            int numChunks = (int) Math.max(1, Math.min(threads * 4L, (size - dataStart) / MIN_CHUNK_BYTES));
+            List<Chunk> parsed = new ArrayList<>(numChunks);
+            if (numChunks == 1) {
+                parsed.add(parse(channel, dataStart, size, dataStart, userColumn, columns.size()));
+            } else {
+                List<Callable<Chunk>> chunks = new ArrayList<>(numChunks);
+                for (int i = 0; i < numChunks; i++) {
+                    long start = dataStart + (size - dataStart) * i / numChunks;
+                    long end = dataStart + (size - dataStart) * (i + 1) / numChunks;
+                    int user = userColumn;
+                    chunks.add(() -> parse(channel, start, end, dataStart, user, columns.size()));
+                }
+                ExecutorService workers = Executors.newFixedThreadPool(Math.min(threads, numChunks), runnable -> {
+                    Thread thread = new Thread(runnable, "csv-loader");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                try {
+                    for (Future<Chunk> chunk : workers.invokeAll(chunks)) {
+                        parsed.add(chunk.get());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while reading " + file, e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException("Could not read " + file, e.getCause());
+                } finally {
+                    workers.shutdownNow();
+                }
+            }
+
+            // merged in file order, so a later row for the same customer wins as it would reading sequentially
+            int total = 0;
+            for (Chunk chunk : parsed) {
+                total += chunk.rankings.size();
+            }
+            Map<String, short[]> rankings = new HashMap<>(total * 4 / 3 + 1);
+            for (Chunk chunk : parsed) {
+                rankings.putAll(chunk.rankings);
+                rows += chunk.rows;
+                malformedRows += chunk.malformedRows;
+                unknownItems += chunk.unknownItems;
+            }
+            return rankings;
+        }
+    }
+
+    /**
+     * Index of the customer id column among the header's column names: "user", in any case, quoted or not. -1 if
+     * there is none; the last one wins if there are several.
+     */
+    static int userColumn(List<String> columns) {
+        int userColumn = -1;
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).trim().replace("\"", "").equalsIgnoreCase("user")) {
+                userColumn = i;
+            }
+        }
+        return userColumn;
+    }
+
+    private static final class Chunk {
+        final Map<String, short[]> rankings = new HashMap<>();
+        int rows;
+        int malformedRows;
+        int unknownItems;
+    }
+
+    private Chunk parse(FileChannel channel, long start, long end, long dataStart, int userColumn, int numColumns)
+            throws IOException {
+        Chunk chunk = new Chunk();
+        LineReader lines = new LineReader(channel, start, channel.size());
+        // a range starting mid-line leaves that line to the range before it
+        if (start > dataStart && !lines.startsLine()) {
+            lines.next();
+        }
+        short[] recItems = new short[numColumns];
+        byte[] field = new byte[64];
+        while (lines.position < end && lines.next()) {
+            byte[] line = lines.line;
+            int length = lines.length;
+            if (length == 0) {
+                continue;
+            }
+            chunk.rows++;
+
+            String user = null;
+            int numRecItems = 0;
+            int unknown = 0;
+            boolean malformed = false;
+            int column = 0;
+            int i = 0;
+            while (i <= length) {
+                // one field: [from, to) of line, or the unquoted copy in field
+                byte[] value = line;
+                int from = i;
+                int to;
+                if (i < length && line[i] == '"') {
+                    int copied = 0;
+                    int j = i + 1;
+                    boolean closed = false;
+                    while (j < length) {
+                        if (line[j] == '"') {
+                            if (j + 1 < length && line[j + 1] == '"') {
+                                j++;
+                            } else {
+                                closed = true;
+                                j++;
+                                break;
+                            }
+                        }
+                        if (copied == field.length) {
+                            field = Arrays.copyOf(field, field.length * 2);
+                        }
+                        field[copied++] = line[j++];
+                    }
+                    if (!closed || (j < length && line[j] != ',')) {
+                        malformed = true;
+                        break;
+                    }
+                    value = field;
+                    from = 0;
+                    to = copied;
+                    i = j + 1;
+                } else {
+                    int j = i;
+                    while (j < length && line[j] != ',') {
+                        j++;
+                    }
+                    to = j;
+                    i = j + 1;
+                }
+
+                if (column == userColumn) {
+                    user = new String(value, from, to - from, StandardCharsets.UTF_8);
+                } else if (column < numColumns && to > from && !matches(value, from, to, TAKEAWAY)) {
+                    int index = indexOf(value, from, to);
+                    if (index < 0) {
+                        unknown++;
+                    } else {
+                        recItems[numRecItems++] = (short) index;
+                    }
+                }
+                column++;
+            }
+
+            if (malformed || user == null || user.isEmpty()) {
+                chunk.malformedRows++;
+                continue;
+            }
+            chunk.unknownItems += unknown;
+            chunk.rankings.put(user, Arrays.copyOf(recItems, numRecItems));
+        }
+        return chunk;
+    }
+
+    private int indexOf(byte[] bytes, int from, int to) {
+        for (int slot = hash(bytes, from, to) & mask; itemIndices[slot] >= 0; slot = (slot + 1) & mask) {
+            if (matches(bytes, from, to, itemIds[slot])) {
+                return itemIndices[slot];
+            }
+        }
+        return -1;
+    }
+
+    private static int hash(byte[] bytes, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        // spread the low bits, which pick the slot
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(byte[] bytes, int from, int to, byte[] expected) {
+        if (to - from != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (bytes[from + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Lines of a file from a given offset, read through a buffer with positional reads, so several can share one
+     * channel. The line excludes its '\n' and any '\r' before it; position is where the next line starts.
+     */
+    private static final class LineReader {
+        private final FileChannel channel;
+        private final long size;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private long bufferStart;
+        byte[] line = new byte[256];
+        int length;
+        long position;
+
+        LineReader(FileChannel channel, long position, long size) {
+            this.channel = channel;
+            this.position = position;
+            this.size = size;
+            bufferStart = position;
+            buffer.limit(0);
+        }
+
+        /**
+         * Whether position is at the start of a line, i.e. just after a '\n'.
+         */
+        boolean startsLine() throws IOException {
+            ByteBuffer previous = ByteBuffer.allocate(1);
+            channel.read(previous, position - 1);
+            return previous.get(0) == '\n';
+        }
+
+        boolean next() throws IOException {
+            if (position >= size) {
+                return false;
+            }
+            length = 0;
+            while (true) {
+                if (!buffer.hasRemaining()) {
+                    bufferStart += buffer.limit();
+                    buffer.clear();
+                    if (bufferStart >= size || channel.read(buffer, bufferStart) <= 0) {
+                        buffer.limit(0);
+                        position = size;
+                        break;
+                    }
+                    buffer.flip();
+                }
+                byte b = buffer.get();
+                if (b == '\n') {
+                    position = bufferStart + buffer.position();
+                    break;
+                }
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, line.length * 2);
+                }
+                line[length++] = b;
+            }
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            return true;
+        }
+    }
+}
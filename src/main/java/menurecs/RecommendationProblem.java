@@ -0,0 +1,97 @@
+package menurecs;
+
+/**
+ * One instance of the recommendation model: choose exactly outputLength of the candidate items, maximizing
+ * sum(scores * x) - (300 * sum(y) + 3000 * sum(z)), where y flags a category with more than one chosen item and z is
+ * how far over budget each item would take the current order.
+ */
+public class RecommendationProblem {
+    static final double CATEGORY_PENALTY = 300.0;
+    static final double OVER_BUDGET_PENALTY = 3000.0;
+    // big-M on the category constraint, and the upper bound on z
+    static final double LARGE_M = 1000.0;
+    static final double MAX_OVER_BUDGET = 1000.0;
+
+    // only the first numItems entries of the item arrays are used
+    final int[] itemScores;
+    final double[] itemPrices;
+    final int[] itemCategories;
+    final int numItems;
+    final int numCategories;
+    final int outputLength;
+    final double budget;
+    final double curTotalPrice;
+
+    public RecommendationProblem(int[] itemScores, double[] itemPrices, int[] itemCategories, int numCategories,
+            int outputLength, double budget, double curTotalPrice) {
+        this(itemScores, itemPrices, itemCategories, itemScores.length, numCategories, outputLength, budget,
+                curTotalPrice);
+    }
+
+    public RecommendationProblem(int[] itemScores, double[] itemPrices, int[] itemCategories, int numItems,
+            int numCategories, int outputLength, double budget, double curTotalPrice) {
+        if (itemScores.length < numItems || itemPrices.length < numItems || itemCategories.length < numItems) {
+            throw new IllegalArgumentException("Item scores, prices and categories must hold numItems entries");
+        }
+        this.itemScores = itemScores;
+        this.itemPrices = itemPrices;
+        this.itemCategories = itemCategories;
+        this.numItems = numItems;
+        this.numCategories = numCategories;
+        this.outputLength = outputLength;
+        this.budget = budget;
+        this.curTotalPrice = curTotalPrice;
+    }
+
+    public int getNumItems() {
+        return numItems;
+    }
+
+    /**
+     * Smallest z satisfying itemPrice * x + curTotalPrice <= (1 + z) * budget for the given contribution
+     * (itemPrice * x), or NaN if no z in [0, 1000] satisfies it.
+     */
+    double overBudget(double price) {
+        double total = price + curTotalPrice;
+        if (budget <= 0) {
+            // (1 + z) * budget can only shrink as z grows, so z = 0 is the only candidate
+            return total <= budget ? 0.0 : Double.NaN;
+        }
+        double z = Math.max(0.0, total / budget - 1.0);
+        return z <= MAX_OVER_BUDGET ? z : Double.NaN;
+    }
+
+    /**
+     * Objective value of a selection, or NaN if it violates a constraint.
+     */
+    double objective(int[] selected) {
+        int n = getNumItems();
+        if (selected.length != outputLength) {
+            return Double.NaN;
+        }
+        double baseZ = overBudget(0.0);
+        if (Double.isNaN(baseZ)) {
+            return Double.NaN;
+        }
+
+        double total = -OVER_BUDGET_PENALTY * baseZ * n;
+        int[] perCategory = new int[numCategories];
+        for (int i : selected) {
+            double z = overBudget(itemPrices[i]);
+            if (Double.isNaN(z)) {
+                return Double.NaN;
+            }
+            total += itemScores[i] - OVER_BUDGET_PENALTY * (z - baseZ);
+            perCategory[itemCategories[i]]++;
+        }
+        for (int count : perCategory) {
+            if (count > 1 + LARGE_M) {
+                return Double.NaN;
+            }
+            if (count > 1) {
+                total -= CATEGORY_PENALTY;
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,172 @@
+package menurecs;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Final /recommend answers keyed by the normalized request (basket sorted and merged, numbers in canonical form) and
+ * the data snapshot version, so an exact repeat skips the DT lookup and the solve. Only optimal answers are kept: a
+ * greedy or time-limited one could be beaten next time. Bounded (least recently used first), entries expire after a
+ * TTL like the DT scores they came from, and everything is dropped when a new snapshot is loaded. A hit is reported
+ * with source "cache" rather than the solver that first worked it out.
+ */
+public class ResultCache {
+    static final String SOURCE = "cache";
+
+    // cannot appear in a query parameter value as sent by the app
+    private static final char SEPARATOR = '\u0001';
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, CachedResult> entries;
+    private long version = -1;
+    private long estimatedBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private static class CachedResult {
+        final Recommendation recommendation;
+        final long storedAt;
+        final long bytes;
+
+        CachedResult(Recommendation recommendation, long storedAt, long bytes) {
+            this.recommendation = recommendation;
+            this.storedAt = storedAt;
+            this.bytes = bytes;
+        }
+    }
+
+    public ResultCache(int maxEntries, long ttl, TimeUnit unit) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = unit.toNanos(ttl);
+        entries = new LinkedHashMap<String, CachedResult>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+                if (size() > ResultCache.this.maxEntries) {
+                    estimatedBytes -= eldest.getValue().bytes;
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Cache configured from -Dmenurecs.resultCache.maxEntries (default 10000) and -Dmenurecs.resultCache.ttlSeconds
+     * (default 300); maxEntries=0 turns it off.
+     */
+    public static ResultCache fromSystemProperties() {
+        return new ResultCache(Integer.getInteger("menurecs.resultCache.maxEntries", 10000),
+                Long.getLong("menurecs.resultCache.ttlSeconds", 300L), TimeUnit.SECONDS);
+    }
+
+    /**
+     * The cache key: everything that decides the answer except the deadline, which only matters for answers that
+     * are not cached anyway. That includes the outlet's unavailable items (see Availability), so a sold-out change
+     * never serves an answer worked out before it. The customer id and context are taken as they are: parse has
+     * already normalized them, the same way for every other lookup.
+     */
+    static String key(DataSnapshot snapshot, RecommendRequest request, long[] unavailable) {
+        // basket as (item index, qty) pairs, sorted by item with repeats merged
+        long[] basket = new long[request.numBasketItems];
+        for (int i = 0; i < basket.length; i++) {
+            basket[i] = ((long) request.basketItems[i] << 32) | (request.basketQty[i] & 0xffffffffL);
+        }
+        Arrays.sort(basket);
+
+        ScoringContext context = request.context;
+        StringBuilder key = new StringBuilder(96);
+        key.append(snapshot.version).append(SEPARATOR)
+                .append(request.customerId).append(SEPARATOR)
+                .append(request.outputLength).append(SEPARATOR)
+                .append(request.numPax).append(SEPARATOR)
+                .append(request.targetSpend).append(SEPARATOR)
+                .append(context.hour).append(SEPARATOR)
+                .append(context.schoolHoliday).append(SEPARATOR)
+                .append(context.publicHoliday).append(SEPARATOR)
+                .append(context.weekday).append(SEPARATOR)
+                .append(context.outlet).append(SEPARATOR)
+                .append(context.day);
+        for (int i = 0; i < basket.length; ) {
+            int item = (int) (basket[i] >>> 32);
+            long qty = 0;
+            for (; i < basket.length && (int) (basket[i] >>> 32) == item; i++) {
+                qty += (int) basket[i];
+            }
+            key.append(SEPARATOR).append(item).append('x').append(qty);
+        }
+        if (unavailable != null) {
+            key.append(SEPARATOR).append('u');
+            for (long word : unavailable) {
+                key.append(Long.toHexString(word)).append('.');
+            }
+        }
+        return key.toString();
+    }
+
+    public synchronized Recommendation get(long snapshotVersion, String key) {
+        invalidateBefore(snapshotVersion);
+        CachedResult cached = entries.get(key);
+        if (cached != null && System.nanoTime() - cached.storedAt > ttlNanos) {
+            entries.remove(key);
+            estimatedBytes -= cached.bytes;
+            cached = null;
+        }
+        if (cached == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return cached.recommendation;
+    }
+
+    public synchronized void put(long snapshotVersion, String key, Recommendation recommendation) {
+        if (!recommendation.optimal || maxEntries <= 0) {
+            return;
+        }
+        invalidateBefore(snapshotVersion);
+        if (snapshotVersion < version) {
+            // computed on a snapshot that has since been replaced
+            return;
+        }
+        // key chars, the entry and list objects and their references; the item id strings belong to the catalog
+        long bytes = 2L * key.length() + 40 + 64 + 48 + 8L * recommendation.itemIds.size();
+        // a copy as hits will report it; the item list is never modified, so it can be shared
+        Recommendation cachedCopy = new Recommendation(recommendation.itemIds, SOURCE, true);
+        CachedResult previous = entries.put(key, new CachedResult(cachedCopy, System.nanoTime(), bytes));
+        estimatedBytes += bytes - (previous != null ? previous.bytes : 0);
+    }
+
+    private void invalidateBefore(long snapshotVersion) {
+        if (snapshotVersion > version) {
+            if (!entries.isEmpty()) {
+                invalidations.incrementAndGet();
+            }
+            entries.clear();
+            estimatedBytes = 0;
+            version = snapshotVersion;
+        }
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", entries.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("estimatedBytes", estimatedBytes);
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.get());
+        stats.put("hitRatio", lookups > 0 ? (double) hitCount / lookups : 0.0);
+        stats.put("evictions", evictions.get());
+        stats.put("invalidations", invalidations.get());
+        return stats;
+    }
+}
@@ -0,0 +1,116 @@
+package menurecs;
+
+import spark.Response;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes recommendation results, a JSON array of item ids, into a buffer kept per thread and from there straight to
+ * the response, instead of a new Gson and a String per response. The output is what Gson would give, including its
+ * escaping of HTML characters.
+ */
+final class ResultWriter {
+    private static final ThreadLocal<ResultWriter> WRITERS = ThreadLocal.withInitial(ResultWriter::new);
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private byte[] buffer = new byte[256];
+    private int length;
+
+    private ResultWriter() {
+    }
+
+    /**
+     * This thread's writer; its buffer is overwritten by the next write on the same thread.
+     */
+    static ResultWriter forCurrentThread() {
+        return WRITERS.get();
+    }
+
+    ResultWriter writeItemIds(List<String> itemIds) {
+        length = 0;
+        append('[');
+        for (int i = 0; i < itemIds.size(); i++) {
+            if (i > 0) {
+                append(',');
+            }
+            appendString(itemIds.get(i));
+        }
+        append(']');
+        return this;
+    }
+
+    /**
+     * Send what was written as the JSON body. Like MenuResponse, the bytes go to the raw response, and Spark leaves
+     * a committed response alone, so the route returns "".
+     */
+    void send(Response response) throws IOException {
+        HttpServletResponse raw = response.raw();
+        raw.setContentType("application/json");
+        raw.setContentLength(length);
+        OutputStream out = raw.getOutputStream();
+        out.write(buffer, 0, length);
+        out.flush();
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, length);
+    }
+
+    int length() {
+        return length;
+    }
+
+    private void append(int b) {
+        if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        buffer[length++] = (byte) b;
+    }
+
+    // a JSON string literal, UTF-8 encoded
+    private void appendString(String s) {
+        append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                append('\\');
+                append(c);
+            } else if (c == '\n' || c == '\r' || c == '\t' || c == '\b' || c == '\f') {
+                append('\\');
+                append(c == '\n' ? 'n' : c == '\r' ? 'r' : c == '\t' ? 't' : c == '\b' ? 'b' : 'f');
+            } else if (c < 0x20 || c == '<' || c == '>' || c == '&' || c == '=' || c == '\''
+                    || c == '\u2028' || c == '\u2029') {
+                append('\\');
+                append('u');
+                append(HEX[c >>> 12]);
+                append(HEX[(c >>> 8) & 0xf]);
+                append(HEX[(c >>> 4) & 0xf]);
+                append(HEX[c & 0xf]);
+            } else if (c < 0x80) {
+                append(c);
+            } else if (c < 0x800) {
+                append(0xc0 | (c >>> 6));
+                append(0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                append(0xf0 | (codePoint >>> 18));
+                append(0x80 | ((codePoint >>> 12) & 0x3f));
+                append(0x80 | ((codePoint >>> 6) & 0x3f));
+                append(0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired, as String.getBytes would encode it
+                append('?');
+            } else {
+                append(0xe0 | (c >>> 12));
+                append(0x80 | ((c >>> 6) & 0x3f));
+                append(0x80 | (c & 0x3f));
+            }
+        }
+        append('"');
+    }
+}
@@ -0,0 +1,50 @@
+package menurecs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Source of the decision-tree scores for a scoring context: the R service over HTTP (RScoringClient), or an exported
+ * score table evaluated in-process (EmbeddedScorer). Unknown or invalid contexts fail with IllegalArgumentException.
+ */
+public interface Scorer {
+    // fingerprint of scores that can't be identified, see fingerprint
+    long UNKNOWN_FINGERPRINT = 0;
+
+    DtRankTable score(ScoringContext context) throws IOException;
+
+    /**
+     * score without blocking the caller.
+     */
+    CompletableFuture<DtRankTable> scoreAsync(ScoringContext context);
+
+    /**
+     * Counters for the /status endpoint.
+     */
+    Map<String, Object> getStats();
+
+    /**
+     * Identifies the scores this scorer gives, so answers precomputed from other scores are recognized as stale (see
+     * PrecomputedStore.Inputs). UNKNOWN_FINGERPRINT if they can't be identified, in which case precomputed answers
+     * are neither written nor used.
+     */
+    long fingerprint();
+
+    /**
+     * The scorer selected by -Dmenurecs.scorer: "http" (default) for the R service, or "embedded" for
+     * dt_scores.csv in the data directory.
+     */
+    static Scorer fromSystemProperties(String dataDir) throws IOException {
+        String name = System.getProperty("menurecs.scorer", "http");
+        switch (name) {
+            case "http":
+                return RScoringClient.fromSystemProperties();
+            case "embedded":
+                return EmbeddedScorer.load(new File(dataDir, EmbeddedScorer.FILE_NAME));
+            default:
+                throw new IllegalArgumentException("Unknown scorer: " + name);
+        }
+    }
+}
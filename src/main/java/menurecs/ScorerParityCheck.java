@@ -0,0 +1,135 @@
+package menurecs;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Checks the embedded scorer against recorded R service responses. Recordings are JSON lines,
+ * {"context": {"hour": "12", ...}, "response": "<the R service's JSON body>"}, and can be made from a running R
+ * service (configured as for the server) for every context in the score table:
+ *
+ * java -cp menu-recs-1.0-jar-with-dependencies.jar menurecs.ScorerParityCheck --record [dataDir] [recordings]
+ * java -cp menu-recs-1.0-jar-with-dependencies.jar menurecs.ScorerParityCheck [dataDir] [recordings]
+ *
+ * Exits with status 1 if any context is missing from the table, or has a different item set, score or rank order.
+ * fixtures/synthetic-parity holds a small example of both files, written from the table rather than recorded from R.
+ */
+public class ScorerParityCheck {
+    private static final double TOLERANCE = 1e-9;
+
+    public static void main(String[] args) throws IOException {
+        boolean record = args.length > 0 && args[0].equals("--record");
+        int first = record ? 1 : 0;
+        String dataDir = args.length > first ? args[first] : "data";
+        File recordings = new File(args.length > first + 1 ? args[first + 1] : dataDir + "/r_responses.jsonl");
+
+        EmbeddedScorer embedded = EmbeddedScorer.load(new File(dataDir, EmbeddedScorer.FILE_NAME));
+        if (record) {
+            record(embedded, recordings);
+        } else if (!check(embedded, recordings)) {
+            System.exit(1);
+        }
+    }
+
+    private static void record(EmbeddedScorer embedded, File recordings) throws IOException {
+        int recorded = 0;
+        try (RScoringClient client = RScoringClient.fromSystemProperties();
+             Writer out = new OutputStreamWriter(new FileOutputStream(recordings), StandardCharsets.UTF_8)) {
+            for (ScoringContext context : embedded.contexts()) {
+                JsonObject line = new JsonObject();
+                line.add("context", contextToJson(context));
+                line.addProperty("response", client.fetchJson(context));
+                out.write(line.toString());
+                out.write('\n');
+                recorded++;
+            }
+        }
+        System.out.println("Recorded " + recorded + " R responses to " + recordings);
+    }
+
+    private static boolean check(EmbeddedScorer embedded, File recordings) throws IOException {
+        int same = 0;
+        int mismatches = 0;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(recordings),
+                StandardCharsets.UTF_8))) {
+            JsonParser parser = new JsonParser();
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                JsonObject recorded = parser.parse(line).getAsJsonObject();
+                ScoringContext context = contextFromJson(recorded.getAsJsonObject("context"));
+                DtRankTable expected = DtRankTable.parse(recorded.get("response").getAsString());
+
+                String difference;
+                try {
+                    difference = compare(expected, embedded.score(context));
+                } catch (IllegalArgumentException e) {
+                    difference = "not in the score table";
+                }
+                if (difference == null) {
+                    same++;
+                } else {
+                    mismatches++;
+                    System.out.println("Context " + context + ": " + difference);
+                }
+            }
+        }
+
+        System.out.println("Same scores: " + same + ", mismatches: " + mismatches);
+        return mismatches == 0;
+    }
+
+    // null if both hold the same items with the same scores, in the same rank order
+    private static String compare(DtRankTable expected, DtRankTable actual) {
+        if (expected.size() != actual.size()) {
+            return "R has " + expected.size() + " items, the table " + actual.size();
+        }
+        Map<String, Double> actualScores = new HashMap<>();
+        for (int i = 0; i < actual.size(); i++) {
+            actualScores.put(actual.itemIds[i], actual.scores[i]);
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            Double score = actualScores.get(expected.itemIds[i]);
+            if (score == null) {
+                return "item " + expected.itemIds[i] + " missing from the table";
+            }
+            if (Math.abs(score - expected.scores[i]) > TOLERANCE * Math.max(1.0, Math.abs(expected.scores[i]))) {
+                return "item " + expected.itemIds[i] + " scores " + expected.scores[i] + " in R, " + score
+                        + " in the table";
+            }
+        }
+        // the same scores can still rank differently, e.g. scores within the tolerance or a different tie order
+        for (int i = 0; i < expected.size(); i++) {
+            if (!expected.itemIds[i].equals(actual.itemIds[i])) {
+                return "rank " + (i + 1) + " is " + expected.itemIds[i] + " from R, " + actual.itemIds[i]
+                        + " from the table";
+            }
+        }
+        return null;
+    }
+
+    private static JsonObject contextToJson(ScoringContext context) {
+        JsonObject json = new JsonObject();
+        String[] values = {context.hour, context.schoolHoliday, context.publicHoliday, context.weekday,
+                context.outlet, context.day};
+        for (int i = 0; i < values.length; i++) {
+            json.addProperty(EmbeddedScorer.CONTEXT_COLUMNS[i], values[i]);
+        }
+        return json;
+    }
+
+    private static ScoringContext contextFromJson(JsonObject json) {
+        String[] values = new String[EmbeddedScorer.CONTEXT_COLUMNS.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = json.get(EmbeddedScorer.CONTEXT_COLUMNS[i]).getAsString();
+        }
+        return ScoringContext.normalized(values[0], values[1], values[2], values[3], values[4], values[5]);
+    }
+}
@@ -0,0 +1,85 @@
+package menurecs;
+
+import java.util.Objects;
+
+/**
+ * The request parameters the R service's decision-tree scores depend on. Independent of the customer.
+ */
+public class ScoringContext {
+    final String hour;
+    final String schoolHoliday;
+    final String publicHoliday;
+    final String weekday;
+    final String outlet;
+    final String day;
+
+    public ScoringContext(String hour, String schoolHoliday, String publicHoliday, String weekday, String outlet,
+            String day) {
+        this.hour = hour;
+        this.schoolHoliday = schoolHoliday;
+        this.publicHoliday = publicHoliday;
+        this.weekday = weekday;
+        this.outlet = outlet;
+        this.day = day;
+    }
+
+    /**
+     * The context as requests are normalized: each value trimmed. Every context that is looked up or stored (in the
+     * DT caches, the R call, the result cache and the precomputed store) goes through here first, so " 12" and "12"
+     * are the same context everywhere.
+     */
+    public static ScoringContext normalized(String hour, String schoolHoliday, String publicHoliday, String weekday,
+            String outlet, String day) {
+        return new ScoringContext(hour.trim(), schoolHoliday.trim(), publicHoliday.trim(), weekday.trim(),
+                outlet.trim(), day.trim());
+    }
+
+    public String getHour() {
+        return hour;
+    }
+
+    public String getSchoolHoliday() {
+        return schoolHoliday;
+    }
+
+    public String getPublicHoliday() {
+        return publicHoliday;
+    }
+
+    public String getWeekday() {
+        return weekday;
+    }
+
+    public String getOutlet() {
+        return outlet;
+    }
+
+    public String getDay() {
+        return day;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ScoringContext)) {
+            return false;
+        }
+        ScoringContext that = (ScoringContext) o;
+        return hour.equals(that.hour) && schoolHoliday.equals(that.schoolHoliday)
+                && publicHoliday.equals(that.publicHoliday) && weekday.equals(that.weekday)
+                && outlet.equals(that.outlet) && day.equals(that.day);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(hour, schoolHoliday, publicHoliday, weekday, outlet, day);
+    }
+
+    @Override
+    public String toString() {
+        return "hour=" + hour + ", school_holiday=" + schoolHoliday + ", public_holiday=" + publicHoliday
+                + ", weekday=" + weekday + ", outlet=" + outlet + ", day=" + day;
+    }
+}
@@ -0,0 +1,220 @@
+package menurecs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * One diner's ordering session. The CF ranking, DT ranks and prepared candidates are worked out once and then kept
+ * up to date as the basket changes, so a recommendation after adding a dish is just a rescore and a solve, warm-started
+ * from the previous solution. All methods are synchronized: calls for one session are serialized.
+ */
+class Session {
+    final String id;
+    final String customerId;
+    final int outputLength;
+    final int numPax;
+    final double targetSpend;
+    final ScoringContext context;
+    final int deadlineMs;
+    // for the current snapshot's catalog, so it changes when a reload rebases the session
+    volatile long estimatedBytes;
+    // what SessionHandler has counted for this session in its total, only used under its lock
+    long accountedBytes;
+    volatile long lastAccessMillis;
+
+    private final Candidates candidates = new Candidates();
+    private CompletableFuture<DtRankTable> dtRankFuture;
+    private DataSnapshot snapshot;
+    // the outlet's unavailable items the candidates were built without
+    private long[] unavailable;
+    // candidate position per catalog index, -1 if never a candidate
+    private int[] order;
+    // quantity in the basket per catalog index
+    private int[] basketQty;
+    private int[] dtRanks;
+    private boolean changed = true;
+    // catalog indices of the last solution
+    private int[] lastItems = new int[0];
+    private Recommendation lastRecommendation;
+
+    Session(String id, DataSnapshot snapshot, RecommendRequest request, CompletableFuture<DtRankTable> dtRankFuture,
+            Availability availability) {
+        this.id = id;
+        this.customerId = request.customerId;
+        this.outputLength = request.outputLength;
+        this.numPax = request.numPax;
+        this.targetSpend = request.targetSpend;
+        this.context = request.context;
+        this.deadlineMs = request.deadlineMs;
+        this.dtRankFuture = dtRankFuture;
+        this.lastAccessMillis = System.currentTimeMillis();
+        prepare(snapshot, availability.unavailable(snapshot, context.outlet), request.basketItems, request.basketQty,
+                request.numBasketItems);
+    }
+
+    private void prepare(DataSnapshot snapshot, long[] unavailable, int[] basketItems, int[] basketQty,
+            int numBasketItems) {
+        MenuCatalog catalog = snapshot.catalog;
+        this.snapshot = snapshot;
+        this.unavailable = unavailable;
+        short[] ranking = snapshot.rankings.get(customerId);
+        candidates.prepare(catalog, ranking, unavailable, basketItems, basketQty, numBasketItems);
+
+        order = new int[catalog.size()];
+        if (ranking != null) {
+            Arrays.fill(order, -1);
+            for (int i = ranking.length - 1; i >= 0; i--) {
+                order[ranking[i]] = i;
+            }
+        } else {
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+        }
+        if (unavailable != null) {
+            for (int i = 0; i < order.length; i++) {
+                if ((unavailable[i >>> 6] & (1L << i)) != 0) {
+                    order[i] = -1;
+                }
+            }
+        }
+        this.basketQty = new int[catalog.size()];
+        for (int i = 0; i < numBasketItems; i++) {
+            this.basketQty[basketItems[i]] += basketQty[i];
+        }
+        dtRanks = null;
+        changed = true;
+        // candidate arrays, order, basket quantities and DT ranks over the catalog, plus fixed overhead
+        estimatedBytes = 256 + 32L * catalog.size() + candidates.basket.length * 8L;
+    }
+
+    /**
+     * Move the session onto a reloaded snapshot or changed availability, carrying the basket over by item id. Items
+     * no longer on the menu drop out of the basket.
+     */
+    private void rebase(DataSnapshot next, long[] nextUnavailable) {
+        MenuCatalog previous = snapshot.catalog;
+        int[] items = new int[previous.size()];
+        int[] qty = new int[previous.size()];
+        int numItems = 0;
+        for (int i = 0; i < basketQty.length; i++) {
+            int item = basketQty[i] > 0 ? next.catalog.indexOf(previous.itemIds[i]) : -1;
+            if (item >= 0) {
+                items[numItems] = item;
+                qty[numItems] = basketQty[i];
+                numItems++;
+            }
+        }
+        boolean sameCatalog = next.catalog == previous;
+        int[] previousDtRanks = dtRanks;
+        prepare(next, nextUnavailable, items, qty, numItems);
+        if (sameCatalog) {
+            dtRanks = previousDtRanks;
+        } else {
+            lastItems = new int[0];
+        }
+    }
+
+    synchronized void addItem(String itemId, int qty) {
+        int item = indexOf(itemId);
+        if (qty <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive: " + qty);
+        }
+        basketQty[item] += qty;
+        candidates.addToBasket(snapshot.catalog, item, qty);
+        changed = true;
+    }
+
+    /**
+     * Take qty of an item out of the basket, or all of it if qty is not positive or more than is there.
+     */
+    synchronized void removeItem(String itemId, int qty) {
+        int item = indexOf(itemId);
+        int current = basketQty[item];
+        if (current == 0) {
+            return;
+        }
+        int removed = qty <= 0 || qty > current ? current : qty;
+        basketQty[item] -= removed;
+        candidates.removeFromBasket(snapshot.catalog, item, removed, basketQty[item] == 0, order);
+        changed = true;
+    }
+
+    private int indexOf(String itemId) {
+        int item = snapshot.catalog.indexOf(itemId);
+        if (item < 0) {
+            throw new IllegalArgumentException("Unknown item id: " + itemId);
+        }
+        return item;
+    }
+
+    /**
+     * Recommendations for the current basket. Unchanged since the last call, with the same DT scores, means the same
+     * answer without a solve, unless the last one was a fallback that may do better with another try.
+     */
+    synchronized Recommendation recommend(DataSnapshot current, Solver solver, DtScoreCache dtScoreCache,
+            Availability availability, long deadline) {
+        long[] currentUnavailable = availability.unavailable(current, context.outlet);
+        if (current.version != snapshot.version || !Arrays.equals(currentUnavailable, unavailable)) {
+            rebase(current, currentUnavailable);
+        }
+        // a different future once the cached scores expired or a failed lookup was dropped; this asks the scorer again
+        CompletableFuture<DtRankTable> latestDtRanks = dtScoreCache.getAsync(context);
+        if (latestDtRanks != dtRankFuture) {
+            dtRankFuture = latestDtRanks;
+            dtRanks = null;
+            changed = true;
+        }
+        if (!changed && lastRecommendation.optimal) {
+            return lastRecommendation;
+        }
+        MenuCatalog catalog = snapshot.catalog;
+
+        long stageStart = System.nanoTime();
+        if (dtRanks == null) {
+            try {
+                dtRanks = MenuEngine.awaitDtRanks(dtRankFuture).ranksFor(catalog);
+            } finally {
+                stageStart = Metrics.DT_WAIT.recordSince(stageStart);
+            }
+        }
+
+        candidates.score(catalog, dtRanks);
+        RecommendationProblem problem = candidates.toProblem(catalog, outputLength, numPax * targetSpend);
+        // warm start from whichever of the last picks are still candidates
+        int[] hint = new int[lastItems.length];
+        int hintSize = 0;
+        for (int i = 0; i < candidates.size && hintSize < hint.length; i++) {
+            for (int item : lastItems) {
+                if (candidates.items[i] == item) {
+                    hint[hintSize++] = i;
+                    break;
+                }
+            }
+        }
+        stageStart = Metrics.MODEL_BUILD.recordSince(stageStart);
+
+        SolverResult solution = solver.solve(problem, Arrays.copyOf(hint, hintSize), deadline);
+        Metrics.SOLVE.recordSince(stageStart);
+
+        List<String> results = new ArrayList<>();
+        if (solution.hasSolution()) {
+            int[] selected = solution.getSelected();
+            lastItems = new int[selected.length];
+            for (int i = 0; i < selected.length; i++) {
+                lastItems[i] = candidates.items[selected[i]];
+                results.add(catalog.itemIds[lastItems[i]]);
+            }
+        } else {
+            Metrics.NO_SOLUTION.increment();
+            lastItems = new int[0];
+        }
+        lastRecommendation = new Recommendation(Collections.unmodifiableList(results), solution.source,
+                solution.optimal);
+        changed = false;
+        return lastRecommendation;
+    }
+}
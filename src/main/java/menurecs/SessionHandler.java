@@ -0,0 +1,263 @@
+package menurecs;
+
+import com.google.gson.Gson;
+import spark.Request;
+import spark.Response;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ordering sessions: POST /sessions takes the /recommend parameters (itemids and itemqty optional) and returns a
+ * session id; POST /sessions/:id/items and DELETE /sessions/:id/items/:itemid change the basket; GET
+ * /sessions/:id/recommend returns recommendations for it; DELETE /sessions/:id ends it.
+ *
+ * Sessions idle for longer than the timeout are dropped, and when their estimated memory goes over the cap the least
+ * recently used ones go first.
+ */
+public class SessionHandler {
+    private final DtScoreCache dtScoreCache;
+    private final Solver solver;
+    private final AdmissionController admissionController;
+    private final Availability availability;
+    private final long idleTimeoutMillis;
+    private final long maxBytes;
+    // access order: least recently used first
+    private final LinkedHashMap<String, Session> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    public SessionHandler(DtScoreCache dtScoreCache, Solver solver, AdmissionController admissionController,
+            Availability availability, long idleTimeoutMillis, long maxBytes) {
+        this.dtScoreCache = dtScoreCache;
+        this.solver = solver;
+        this.admissionController = admissionController;
+        this.availability = availability;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Handler configured from -Dmenurecs.sessions.idleTimeoutSeconds (default 1800) and
+     * -Dmenurecs.sessions.maxMemoryMb (default 64).
+     */
+    public static SessionHandler fromSystemProperties(DtScoreCache dtScoreCache, Solver solver,
+            AdmissionController admissionController, Availability availability) {
+        return new SessionHandler(dtScoreCache, solver, admissionController, availability,
+                TimeUnit.SECONDS.toMillis(Integer.getInteger("menurecs.sessions.idleTimeoutSeconds", 1800)),
+                Integer.getInteger("menurecs.sessions.maxMemoryMb", 64) * 1024L * 1024L);
+    }
+
+    /**
+     * Sweep out idle sessions in the background, at a quarter of the idle timeout.
+     */
+    public void startEvicting() {
+        ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 4);
+        evictor.scheduleWithFixedDelay(() -> evictIdle(System.currentTimeMillis()), period, period,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public Object create(DataSnapshot snapshot, Request request, Response response) {
+        RecommendRequest recommendRequest;
+        try {
+            // a session may start with an empty basket
+            recommendRequest = RecommendRequest.parse(name -> {
+                String value = request.queryParams(name);
+                return value == null && (name.equals("itemids") || name.equals("itemqty")) ? "" : value;
+            }, snapshot.catalog);
+        } catch (InvalidRequestException e) {
+            Metrics.BAD_REQUESTS.increment();
+            response.status(400);
+            return e.getMessage();
+        } catch (Exception e) {
+            Metrics.BAD_REQUESTS.increment();
+            response.status(400);
+            return "Some exception occurred: " + e.getClass() + ": " + e.getMessage();
+        }
+
+        // start the DT score lookup now, it is usually done by the first recommend
+        Session session = new Session(UUID.randomUUID().toString(), snapshot, recommendRequest,
+                dtScoreCache.getAsync(recommendRequest.context), availability);
+        synchronized (this) {
+            sessions.put(session.id, session);
+            created.incrementAndGet();
+            account(session);
+        }
+
+        response.status(201);
+        response.type("application/json");
+        return new Gson().toJson(Collections.singletonMap("sessionid", session.id));
+    }
+
+    public Object addItem(Request request, Response response) {
+        Session session = lookup(request.params(":id"));
+        if (session == null) {
+            return notFound(response);
+        }
+        String itemId = request.queryParams("itemid");
+        if (itemId == null) {
+            response.status(400);
+            return "Missing parameter(s): itemid";
+        }
+        try {
+            session.addItem(itemId, quantity(request, 1));
+        } catch (IllegalArgumentException e) {
+            response.status(400);
+            return e.getMessage();
+        }
+        response.status(204);
+        return "";
+    }
+
+    public Object removeItem(Request request, Response response) {
+        Session session = lookup(request.params(":id"));
+        if (session == null) {
+            return notFound(response);
+        }
+        try {
+            // without qty, the item goes entirely
+            session.removeItem(request.params(":itemid"), quantity(request, 0));
+        } catch (IllegalArgumentException e) {
+            response.status(400);
+            return e.getMessage();
+        }
+        response.status(204);
+        return "";
+    }
+
+    public Object recommend(DataSnapshot snapshot, Request request, Response response) {
+        long start = System.nanoTime();
+        Session session = lookup(request.params(":id"));
+        if (session == null) {
+            return notFound(response);
+        }
+        try {
+            long deadline = MenuEngine.deadlineFor(start, session.deadlineMs);
+            Recommendation recommendation = admissionController.run(session.context.outlet,
+                    () -> session.recommend(snapshot, solver, dtScoreCache, availability, deadline));
+            // a reload may have rebased it onto a catalog of another size
+            synchronized (this) {
+                if (sessions.get(session.id) == session) {
+                    account(session);
+                }
+            }
+            response.header(Recommendation.SOURCE_HEADER, recommendation.source);
+            long serializeStart = System.nanoTime();
+            ResultWriter.forCurrentThread().writeItemIds(recommendation.itemIds).send(response);
+            Metrics.SERIALIZE.recordSince(serializeStart);
+            return "";
+        } catch (OverloadedException e) {
+            return MenuEngine.overloaded(response, e);
+        } catch (Exception e) {
+            Metrics.INTERNAL_ERRORS.increment();
+            response.status(400);
+            return "Some exception occurred: " + e.getClass() + ": " + e.getMessage();
+        }
+    }
+
+    public Object end(Request request, Response response) {
+        synchronized (this) {
+            Session session = sessions.remove(request.params(":id"));
+            if (session == null) {
+                return notFound(response);
+            }
+            totalBytes -= session.accountedBytes;
+        }
+        response.status(204);
+        return "";
+    }
+
+    /**
+     * Bring the total up to date with the session's current estimate, then evict least recently used sessions while
+     * it is over the cap. The session itself was just used, so it is evicted last and never here.
+     */
+    private void account(Session session) {
+        long bytes = session.estimatedBytes;
+        totalBytes += bytes - session.accountedBytes;
+        session.accountedBytes = bytes;
+        Iterator<Session> eldest = sessions.values().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Session victim = eldest.next();
+            if (victim == session) {
+                break;
+            }
+            eldest.remove();
+            totalBytes -= victim.accountedBytes;
+            evicted.incrementAndGet();
+        }
+    }
+
+    private static int quantity(Request request, int defaultQty) {
+        String qty = request.queryParams("qty");
+        if (qty == null) {
+            return defaultQty;
+        }
+        try {
+            return Integer.parseInt(qty);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Non-integer parameter(s): qty");
+        }
+    }
+
+    private static Object notFound(Response response) {
+        response.status(404);
+        return "No such session";
+    }
+
+    /**
+     * The live session with this id, marking it used; null if there is none or it has gone idle.
+     */
+    private synchronized Session lookup(String id) {
+        Session session = sessions.get(id);
+        if (session == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (now - session.lastAccessMillis > idleTimeoutMillis) {
+            sessions.remove(id);
+            totalBytes -= session.accountedBytes;
+            expired.incrementAndGet();
+            return null;
+        }
+        session.lastAccessMillis = now;
+        return session;
+    }
+
+    synchronized int evictIdle(long now) {
+        int removed = 0;
+        // least recently used first, so stop at the first one still in use
+        Iterator<Session> eldest = sessions.values().iterator();
+        while (eldest.hasNext()) {
+            Session session = eldest.next();
+            if (now - session.lastAccessMillis <= idleTimeoutMillis) {
+                break;
+            }
+            eldest.remove();
+            totalBytes -= session.accountedBytes;
+            removed++;
+        }
+        expired.addAndGet(removed);
+        return removed;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("active", sessions.size());
+        stats.put("estimatedBytes", totalBytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("created", created.get());
+        stats.put("expired", expired.get());
+        stats.put("evicted", evicted.get());
+        return stats;
+    }
+}
@@ -0,0 +1,55 @@
+package menurecs;
+
+/**
+ * Backend for the optimization step of computeRecommendation.
+ */
+public interface Solver {
+    // deadlines are System.nanoTime() values; this one never passes
+    long NO_DEADLINE = Long.MAX_VALUE;
+
+    SolverResult solve(RecommendationProblem problem);
+
+    /**
+     * Solve starting from a previous selection (item indices into this problem), which need not be complete or still
+     * feasible. Backends that can't use a starting point solve from scratch.
+     */
+    default SolverResult solve(RecommendationProblem problem, int[] hint) {
+        return solve(problem);
+    }
+
+    /**
+     * solve with a hint, giving up by the deadline: a backend that honours it returns its best solution so far
+     * (not optimal) or NO_SOLUTION once time is up. The default ignores the deadline.
+     */
+    default SolverResult solve(RecommendationProblem problem, int[] hint, long deadlineNanos) {
+        return solve(problem, hint);
+    }
+
+    /**
+     * Nanoseconds left until the deadline, Long.MAX_VALUE for NO_DEADLINE.
+     */
+    static long remainingNanos(long deadlineNanos) {
+        return deadlineNanos == NO_DEADLINE ? Long.MAX_VALUE : deadlineNanos - System.nanoTime();
+    }
+
+    /**
+     * Pick a backend by name, as given in the menurecs.solver system property.
+     */
+    static Solver forName(String name) {
+        switch (name) {
+            case "cplex":
+                return new CplexSolver();
+            case "java":
+            case "exact":
+                return new ExactSolver();
+            case "greedy":
+                return new GreedySolver();
+            case "local":
+                return new LocalSearchSolver();
+            case "portfolio":
+                return PortfolioSolver.fromSystemProperties();
+            default:
+                throw new IllegalArgumentException("Unknown solver: " + name);
+        }
+    }
+}
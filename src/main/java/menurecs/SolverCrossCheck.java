@@ -0,0 +1,143 @@
+package menurecs;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Cross-checks ExactSolver against CplexSolver on randomly generated problems shaped like the ones
+ * computeRecommendation builds. Needs the CPLEX shared library, same as the server:
+ *
+ * java -cp cplex.jar:menu-recs-1.0-jar-with-dependencies.jar -Djava.library.path=... menurecs.SolverCrossCheck [instances] [seed]
+ *
+ * With --brute-force the reference is instead every item set enumerated, on problems of at most 20 items, which needs
+ * no CPLEX:
+ *
+ * java -cp menu-recs-1.0-jar-with-dependencies.jar menurecs.SolverCrossCheck --brute-force [instances] [seed]
+ *
+ * Exits with status 1 if any instance picks a different item set (unless the two sets score the same) or if the two
+ * disagree on feasibility.
+ */
+public class SolverCrossCheck {
+    private static final double TOLERANCE = 1e-6;
+    private static final int MAX_ITEMS = 160;
+    // C(20, 6) = 38760 item sets at most
+    private static final int MAX_BRUTE_FORCE_ITEMS = 20;
+
+    public static void main(String[] args) {
+        boolean bruteForce = args.length > 0 && args[0].equals("--brute-force");
+        if (bruteForce) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        int instances = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 421L;
+
+        String referenceName = bruteForce ? "brute force" : "cplex";
+        Solver reference = bruteForce ? SolverCrossCheck::bruteForce : new CplexSolver();
+        int maxItems = bruteForce ? MAX_BRUTE_FORCE_ITEMS : MAX_ITEMS;
+        Solver exact = new ExactSolver();
+        Random random = new Random(seed);
+
+        int same = 0;
+        int ties = 0;
+        int mismatches = 0;
+        for (int t = 0; t < instances; t++) {
+            RecommendationProblem problem = randomProblem(random, maxItems);
+            SolverResult expected = reference.solve(problem);
+            SolverResult actual = exact.solve(problem);
+
+            if (expected.hasSolution() != actual.hasSolution()) {
+                mismatches++;
+                System.out.println("Instance " + t + ": feasibility differs, " + referenceName + " "
+                        + expected.hasSolution() + ", exact " + actual.hasSolution());
+            } else if (!expected.hasSolution() || Arrays.equals(expected.getSelected(), actual.getSelected())) {
+                same++;
+            } else if (Math.abs(problem.objective(expected.getSelected())
+                    - problem.objective(actual.getSelected())) <= TOLERANCE) {
+                // alternative optimum
+                ties++;
+            } else {
+                mismatches++;
+                System.out.println("Instance " + t + ": " + referenceName + " "
+                        + Arrays.toString(expected.getSelected()) + " = " + expected.getObjective() + ", exact "
+                        + Arrays.toString(actual.getSelected()) + " = " + actual.getObjective());
+            }
+        }
+
+        System.out.println("Same item set: " + same + ", equal-objective ties: " + ties + ", mismatches: "
+                + mismatches + " (of " + instances + ", seed " + seed + ")");
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * The best of every outputLength-item set, first one found on ties; optimal by construction.
+     */
+    static SolverResult bruteForce(RecommendationProblem problem) {
+        int n = problem.getNumItems();
+        int k = problem.outputLength;
+        if (k < 0 || k > n) {
+            return SolverResult.NO_SOLUTION;
+        }
+        int[] current = new int[k];
+        for (int i = 0; i < k; i++) {
+            current[i] = i;
+        }
+        int[] best = null;
+        double bestObjective = Double.NEGATIVE_INFINITY;
+        while (true) {
+            double objective = problem.objective(current);
+            if (!Double.isNaN(objective) && objective > bestObjective) {
+                best = current.clone();
+                bestObjective = objective;
+            }
+            // next combination in lexicographic order
+            int i = k - 1;
+            while (i >= 0 && current[i] == n - k + i) {
+                i--;
+            }
+            if (i < 0) {
+                break;
+            }
+            current[i]++;
+            for (int j = i + 1; j < k; j++) {
+                current[j] = current[j - 1] + 1;
+            }
+        }
+        return best == null ? SolverResult.NO_SOLUTION : new SolverResult(best, bestObjective, true, "brute force");
+    }
+
+    // sizes and scores follow computeRecommendation: DT rank 1..n, plus CF rank 1..n for customers with CF data
+    static RecommendationProblem randomProblem(Random random, int maxItems) {
+        int n = 5 + random.nextInt(maxItems - 4);
+        int numCategories = 1 + random.nextInt(12);
+        boolean hasCF = random.nextBoolean();
+
+        int[] dtRanks = new int[n];
+        for (int i = 0; i < n; i++) {
+            dtRanks[i] = i + 1;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = dtRanks[i];
+            dtRanks[i] = dtRanks[j];
+            dtRanks[j] = swap;
+        }
+
+        int[] itemScores = new int[n];
+        double[] itemPrices = new double[n];
+        int[] itemCategories = new int[n];
+        for (int i = 0; i < n; i++) {
+            itemScores[i] = dtRanks[i] + (hasCF ? n - i : 0);
+            itemPrices[i] = (float) (1.5 + random.nextInt(120) * 0.25);
+            itemCategories[i] = random.nextInt(numCategories);
+        }
+
+        int outputLength = 1 + random.nextInt(6);
+        int numPax = 1 + random.nextInt(6);
+        double spendPerPax = 5 + random.nextInt(26);
+        double curTotalPrice = random.nextInt(4) == 0 ? 0.0 : random.nextDouble() * numPax * spendPerPax * 1.2;
+        return new RecommendationProblem(itemScores, itemPrices, itemCategories, numCategories, outputLength,
+                numPax * spendPerPax, curTotalPrice);
+    }
+}
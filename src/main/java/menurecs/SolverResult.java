@@ -0,0 +1,43 @@
+package menurecs;
+
+/**
+ * Indices (into the problem's item arrays, ascending) of the items a solver picked, and which solver it was.
+ */
+public class SolverResult {
+    static final SolverResult NO_SOLUTION = new SolverResult(null, Double.NaN, false, "none");
+
+    final int[] selected;
+    final double objective;
+    final boolean optimal;
+    final String source;
+
+    public SolverResult(int[] selected, double objective, boolean optimal, String source) {
+        this.selected = selected;
+        this.objective = objective;
+        this.optimal = optimal;
+        this.source = source;
+    }
+
+    public boolean hasSolution() {
+        return selected != null;
+    }
+
+    public int[] getSelected() {
+        return selected;
+    }
+
+    public double getObjective() {
+        return objective;
+    }
+
+    public boolean isOptimal() {
+        return optimal;
+    }
+
+    /**
+     * "cplex", "exact", "greedy" or "local"; "none" without a solution.
+     */
+    public String getSource() {
+        return source;
+    }
+}